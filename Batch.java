@@ -0,0 +1,192 @@
+import java.util.ArrayList;
+
+/*
+ * Batch.java
+ *
+ * Non-interactive entry point for long-running jobs on puzzle files (see Helpers.parsePuzzle for the
+ * format: one cage per line such as "A1A2B1 12", '#' comments).
+ *
+ *   java Batch stats <puzzle-file> [threads]   per-cell digit statistics over every solution
+ *   java Batch count <puzzle-file> [checkpoint-file [seconds]]
+ *                                              count solutions; with a checkpoint file the state is saved every
+ *                                              `seconds` (default 60) and a rerun picks up where the last one stopped
+ *   java Batch estimate <puzzle-file> [probes]  estimated size of a full count (Knuth's estimator, milliseconds) and
+ *                                              whether to run it inline or split it into work units
+ *   java Batch memocount <puzzle-file> [max-memo-entries] [--zdd]
+ *                                              exact count with memoized subproblems (see MemoCounter) and memo
+ *                                              hit statistics; --zdd also builds the solution family as a ZDD
+ *   java Batch sample <puzzle-file> <k> [seconds [threads]] [--restarts] [--seed n]
+ *                                              k distinct solutions spread over the solution space (see Sampler),
+ *                                              one 81-digit line each, within `seconds` (default 10)
+ *
+ * Multi-process enumeration (see WorkUnits):
+ *   java Batch split <puzzle-file> <job-dir> <units|auto> [--overwrite]
+ *                                                          cut the search tree into work units ("auto": as many as
+ *                                                          the size estimate calls for); --overwrite replaces a job
+ *                                                          already in job-dir
+ *   java Batch work <job-dir> [threads] [--solutions]      claim and count (or list) units until none are left;
+ *                                                          start as many of these as you like, anywhere the dir is visible
+ *   java Batch requeue <job-dir>                           give units of crashed workers back to the queue
+ *   java Batch merge <job-dir>                             exact totals once every unit is done
+ */
+public class Batch {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) { usage(); return; }
+        String cmd = args[0];
+
+        if (cmd.equals("split") && args.length >= 4) {
+            boolean overwrite = java.util.Arrays.asList(args).contains("--overwrite");
+            int units;
+            if (args[3].equals("auto")) {
+                DLX.Estimate e = new DLX.KillerDLXBuilder(Helpers.readPuzzle(args[1])).build().estimate(ESTIMATE_PROBES, new java.util.Random(1));
+                units = WorkUnits.suggestUnits(e, Runtime.getRuntime().availableProcessors());
+                System.out.println("Estimate: " + e);
+            } else {
+                units = Integer.parseInt(args[3]);
+            }
+            int n = WorkUnits.split(args[1], args[2], units, overwrite);
+            System.out.println("Wrote " + n + " work unit(s) to " + args[2]);
+            return;
+        } else if (cmd.equals("work")) {
+            int threads = (args.length > 2 && !args[2].startsWith("--")) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            boolean solutions = java.util.Arrays.asList(args).contains("--solutions");
+            long t0 = System.nanoTime();
+            int n = WorkUnits.work(args[1], threads, solutions);
+            System.out.printf("Finished %d unit(s) in %.1f s%n", n, (System.nanoTime() - t0) / 1e9);
+            return;
+        } else if (cmd.equals("requeue")) {
+            System.out.println("Requeued " + WorkUnits.requeue(args[1]) + " unit(s)");
+            return;
+        } else if (cmd.equals("merge")) {
+            WorkUnits.Totals t = WorkUnits.merge(args[1]);
+            System.out.println("Units done: " + t.finished + " of " + t.expected);
+            if (!t.complete()) {
+                System.out.println("Still missing: " + t.missing + " (totals below are partial)");
+            }
+            System.out.println("Solutions: " + t.solutions + " (" + t.nodes + " search nodes)");
+            return;
+        }
+
+        Puzzle p = Helpers.readPuzzle(args[1]);
+        if (cmd.equals("stats")) {
+            int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            long t0 = System.nanoTime();
+            SolutionStats stats = SolutionStats.collect(p, threads);
+            stats.print();
+            System.out.printf("%nWalked %d solution(s) on %d thread(s) in %.1f s%n",
+                stats.getSolutionCount(), threads, (System.nanoTime() - t0) / 1e9);
+        } else if (cmd.equals("count")) {
+            count(p, (args.length > 2) ? args[2] : null, (args.length > 3) ? Long.parseLong(args[3]) : 60);
+        } else if (cmd.equals("estimate")) {
+            estimate(p, (args.length > 2) ? Integer.parseInt(args[2]) : ESTIMATE_PROBES);
+        } else if (cmd.equals("memocount")) {
+            memoCount(p, args);
+        } else if (cmd.equals("sample") && args.length >= 3) {
+            sample(p, args);
+        } else {
+            usage();
+        }
+    }
+
+    private static void count(Puzzle p, String checkpointFile, long seconds) throws java.io.IOException {
+        DLX dlx = new DLX.KillerDLXBuilder(p).build();
+        if (checkpointFile != null) {
+            if (java.nio.file.Files.exists(java.nio.file.Paths.get(checkpointFile))) {
+                DLX.Checkpoint cp = DLX.Checkpoint.read(checkpointFile);
+                dlx.resume(cp);
+                System.out.println("Resuming from " + checkpointFile + ": " + cp.found + " solution(s) and "
+                    + cp.nodes + " nodes so far, depth " + cp.path.length);
+            }
+            dlx.setCheckpoint(checkpointFile, seconds * 1000);
+        }
+        long t0 = System.nanoTime();
+        long n = dlx.countSolutions();
+        System.out.printf("Solutions: %d (%d search nodes in total, %.1f s this run)%n", n, dlx.getNodes(), (System.nanoTime() - t0) / 1e9);
+        if (checkpointFile != null) java.nio.file.Files.deleteIfExists(java.nio.file.Paths.get(checkpointFile)); // finished; nothing to resume
+    }
+
+    private static final int ESTIMATE_PROBES = 1000;
+    private static final double INLINE_NODES = 3e8; // about a minute and a half of counting on one core
+
+    private static void estimate(Puzzle p, int probes) {
+        DLX.Estimate e = new DLX.KillerDLXBuilder(p).build().estimate(probes, new java.util.Random(1));
+        System.out.println("Search tree: ~" + String.format("%.3g", e.nodes) + " nodes (95%: "
+            + String.format("%.3g..%.3g", e.nodesLow(), e.nodesHigh()) + ")");
+        System.out.println("Solutions:   ~" + String.format("%.3g", e.solutions) + " (95%: "
+            + String.format("%.3g..%.3g", e.solutionsLow(), e.solutionsHigh()) + ")");
+        System.out.printf("(%d probes in %.1f ms)%n", e.probes, e.nanos / 1e6);
+        if (e.nodesHigh() <= INLINE_NODES) {
+            System.out.println("Suggestion: small enough to run inline (count).");
+        } else {
+            int units = WorkUnits.suggestUnits(e, Runtime.getRuntime().availableProcessors());
+            System.out.println("Suggestion: split into about " + units + " work units (split <puzzle-file> <job-dir> auto),"
+                + " or try memocount.");
+        }
+    }
+
+    private static void memoCount(Puzzle p, String[] args) {
+        boolean zdd = java.util.Arrays.asList(args).contains("--zdd");
+        int maxEntries = (args.length > 2 && !args[2].startsWith("--")) ? Integer.parseInt(args[2]) : MemoCounter.DEFAULT_MAX_ENTRIES;
+        MemoCounter mc = new DLX.KillerDLXBuilder(p).buildInto((numCols, cap) -> new MemoCounter(numCols, maxEntries));
+        long t0 = System.nanoTime();
+        long n = mc.count();
+        System.out.printf("Solutions: %d (%.2f s, memo of at most %d entries)%n", n, (System.nanoTime() - t0) / 1e9, maxEntries);
+        System.out.println("  " + mc.getStats());
+        if (zdd) {
+            t0 = System.nanoTime();
+            MemoCounter.Zdd z = mc.buildZdd();
+            System.out.printf("ZDD: %d nodes for %d solution(s) (%.2f s)%n", z.size(), z.count(z.getRoot()), (System.nanoTime() - t0) / 1e9);
+            System.out.println("  " + mc.getStats());
+        }
+    }
+
+    private static void sample(Puzzle p, String[] args) throws InterruptedException {
+        int k = Integer.parseInt(args[2]);
+        ArrayList<String> rest = new ArrayList<>();
+        boolean restarts = false;
+        long seed = System.nanoTime();
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("--restarts")) restarts = true;
+            else if (args[i].equals("--seed") && i + 1 < args.length) seed = Long.parseLong(args[++i]);
+            else rest.add(args[i]);
+        }
+        long seconds = (rest.size() > 0) ? Long.parseLong(rest.get(0)) : 10;
+        int threads = (rest.size() > 1) ? Integer.parseInt(rest.get(1)) : Runtime.getRuntime().availableProcessors();
+
+        Sampler.Result r = new Sampler(seed).setThreads(threads).setMethod(restarts ? Sampler.RESTARTS : Sampler.DESCENT)
+            .sample(p, k, seconds * 1000);
+        for (int[] g : r.grids) {
+            StringBuilder sb = new StringBuilder(81);
+            for (int d : g) sb.append(d);
+            System.out.println(sb);
+        }
+
+        // spread: how many cells two sampled grids differ in, on average
+        long pairs = 0, differing = 0;
+        for (int i = 0; i < r.grids.size(); i++) {
+            for (int j = i + 1; j < r.grids.size(); j++) {
+                for (int c = 0; c < 81; c++) if (r.grids.get(i)[c] != r.grids.get(j)[c]) differing++;
+                pairs++;
+            }
+        }
+        System.out.printf("%nSampled %d of %d solution(s) in %.1f s (seed %d, %s, %d thread(s)): %d attempts, %d duplicates, %d dead ends%n",
+            r.grids.size(), k, r.nanos / 1e9, seed, restarts ? "restarts" : "weighted descent", threads,
+            r.attempts, r.duplicates, r.deadEnds);
+        if (pairs > 0) System.out.printf("Two sampled grids differ in %.1f cells on average%n", (double) differing / pairs);
+        if (r.exhausted) System.out.println("The puzzle has no solution.");
+    }
+
+    private static void usage() {
+        System.out.println("Usage:");
+        System.out.println("  java Batch stats <puzzle-file> [threads]");
+        System.out.println("  java Batch count <puzzle-file> [checkpoint-file [seconds]]");
+        System.out.println("  java Batch estimate <puzzle-file> [probes]");
+        System.out.println("  java Batch memocount <puzzle-file> [max-memo-entries] [--zdd]");
+        System.out.println("  java Batch sample <puzzle-file> <k> [seconds [threads]] [--restarts] [--seed n]");
+        System.out.println("  java Batch split <puzzle-file> <job-dir> <units|auto> [--overwrite]");
+        System.out.println("  java Batch work <job-dir> [threads] [--solutions]");
+        System.out.println("  java Batch requeue <job-dir>");
+        System.out.println("  java Batch merge <job-dir>");
+    }
+}
@@ -0,0 +1,401 @@
+import java.util.*;
+
+/*
+ * Benchmarks.java
+ *
+ * Small self-contained benchmarks for the solver. Run with:
+ *   java Benchmarks            (everything)
+ *   java Benchmarks encoding   (permutation vs two-level cage encoding)
+ *   java Benchmarks pruning    (rows saved by given/unit-aware pruning in the builder)
+ *   java Benchmarks build      (sequential vs parallel matrix construction)
+ *   java Benchmarks throughput (matrices built per second for ordinary puzzles, batch/service style)
+ *   java Benchmarks engines    (dancing links vs word-parallel bitset engine)
+ *   java Benchmarks offheap    (heap vs off-heap matrix: heap used, GC collections and pause time; needs offheap/ built)
+ *
+ * The puzzles are generated from one fixed solved grid by cutting it into cages, so they are
+ * always solvable and need no input files. Timings are single runs after a short warm-up, so
+ * treat them as rough; the row/node counts are exact.
+ */
+public class Benchmarks {
+
+    // a valid solved grid that all benchmark puzzles are cut from
+    static final int[][] SOLUTION = {
+        {5, 3, 4, 6, 7, 8, 9, 1, 2},
+        {6, 7, 2, 1, 9, 5, 3, 4, 8},
+        {1, 9, 8, 3, 4, 2, 5, 6, 7},
+        {8, 5, 9, 7, 6, 1, 4, 2, 3},
+        {4, 2, 6, 8, 5, 3, 7, 9, 1},
+        {7, 1, 3, 9, 2, 4, 8, 5, 6},
+        {9, 6, 1, 5, 3, 7, 2, 8, 4},
+        {2, 8, 7, 4, 1, 9, 6, 3, 5},
+        {3, 4, 5, 2, 8, 6, 1, 7, 9}
+    };
+
+    public static void main(String[] args) {
+        String which = (args.length > 0) ? args[0] : "all";
+        if (which.equals("all") || which.equals("encoding")) benchEncodings();
+        if (which.equals("all") || which.equals("pruning")) benchPruning();
+        if (which.equals("all") || which.equals("build")) benchParallelBuild();
+        if (which.equals("all") || which.equals("throughput")) benchThroughput();
+        if (which.equals("all") || which.equals("engines")) benchEngines();
+        if (which.equals("all") || which.equals("offheap")) benchOffHeap();
+    }
+
+    // ---- puzzles ----
+
+    // each row cut left to right into cages of `len` cells (the last one may be shorter)
+    static Puzzle stripPuzzle(int len) {
+        Puzzle p = new Puzzle();
+        for (int r = 1; r <= 9; r++) {
+            for (int c = 1; c <= 9; c += len) {
+                int k = Math.min(len, 10 - c);
+                int[] rows = new int[k], cols = new int[k];
+                for (int i = 0; i < k; i++) { rows[i] = r; cols[i] = c + i; }
+                p.addCage(cageFromSolution(rows, cols));
+            }
+        }
+        return p;
+    }
+
+    // every 3x3 box is one 9-cell cage of 45, with a few 1-cell cages (givens) carved out of each box
+    static Puzzle boxPuzzle(int givensPerBox) {
+        Puzzle p = new Puzzle();
+        for (int b = 0; b < 9; b++) {
+            int r0 = (b / 3) * 3 + 1, c0 = (b % 3) * 3 + 1;
+            ArrayList<Integer> rows = new ArrayList<>(), cols = new ArrayList<>();
+            for (int i = 0; i < 9; i++) {
+                int r = r0 + i / 3, c = c0 + i % 3;
+                if (i < givensPerBox) p.addCage(cageFromSolution(new int[] {r}, new int[] {c}));
+                else { rows.add(r); cols.add(c); }
+            }
+            p.addCage(cageFromSolution(toArray(rows), toArray(cols)));
+        }
+        return p;
+    }
+
+    static Cage cageFromSolution(int[] rows, int[] cols) {
+        int sum = 0;
+        for (int i = 0; i < rows.length; i++) sum += SOLUTION[rows[i] - 1][cols[i] - 1];
+        return new Cage(rows, cols, sum);
+    }
+
+    private static int[] toArray(ArrayList<Integer> xs) {
+        int[] a = new int[xs.size()];
+        for (int i = 0; i < a.length; i++) a[i] = xs.get(i);
+        return a;
+    }
+
+    // ---- measurements ----
+
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    static double ms(long nanos) { return nanos / 1e6; }
+
+    // ---- permutation vs two-level cage encoding ----
+
+    static void benchEncodings() {
+        LinkedHashMap<String, Puzzle> puzzles = new LinkedHashMap<>();
+        puzzles.put("strips of 5", stripPuzzle(5));
+        puzzles.put("strips of 6", stripPuzzle(6));
+        puzzles.put("strips of 7", stripPuzzle(7));
+        puzzles.put("boxes, 3 givens each", boxPuzzle(3));
+        puzzles.put("boxes, 2 givens each", boxPuzzle(2));
+
+        // warm-up so the first row isn't paying for class loading and JIT
+        encodingRun(stripPuzzle(3), false);
+        encodingRun(stripPuzzle(3), true);
+
+        System.out.println("Cage encoding: permutation vs two-level");
+        System.out.printf("%-22s %-12s %10s %12s %10s %10s %10s%n",
+            "puzzle", "encoding", "rows", "nodes", "heap MB", "build ms", "solve ms");
+        for (Map.Entry<String, Puzzle> e : puzzles.entrySet()) {
+            for (boolean twoLevel : new boolean[] {false, true}) {
+                String[] r = encodingRun(e.getValue(), twoLevel);
+                System.out.printf("%-22s %-12s %10s %12s %10s %10s %10s%n",
+                    e.getKey(), twoLevel ? "two-level" : "permutation", r[0], r[1], r[2], r[3], r[4]);
+            }
+        }
+        System.out.println();
+    }
+
+    // returns {rows, nodes, heap MB, build ms, solve ms}
+    private static String[] encodingRun(Puzzle p, boolean twoLevel) {
+        try {
+            long heapBefore = usedHeap();
+            long t0 = System.nanoTime();
+            DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p, twoLevel);
+            DLX dlx = builder.build();
+            long t1 = System.nanoTime();
+            long heap = usedHeap() - heapBefore;
+
+            long t2 = System.nanoTime();
+            int[] sol = dlx.solveFirst();
+            long t3 = System.nanoTime();
+            if (sol == null) throw new IllegalStateException("benchmark puzzle has no solution");
+
+            return new String[] {
+                String.valueOf(dlx.getRowCount()), String.valueOf(dlx.getNodeCount()),
+                String.format("%.1f", heap / (1024.0 * 1024.0)),
+                String.format("%.1f", ms(t1 - t0)), String.format("%.1f", ms(t3 - t2))
+            };
+        } catch (OutOfMemoryError e) {
+            return new String[] {"-", "-", "OOM", "-", "-"};
+        }
+    }
+
+    // ---- given/unit-aware pruning ----
+
+    static void benchPruning() {
+        LinkedHashMap<String, Puzzle> puzzles = new LinkedHashMap<>();
+        puzzles.put("boxes, 4 givens each", boxPuzzle(4));
+        puzzles.put("boxes, 3 givens each", boxPuzzle(3));
+        puzzles.put("boxes, 2 givens each", boxPuzzle(2));
+
+        System.out.println("Given/unit-aware pruning (permutation encoding)");
+        for (Map.Entry<String, Puzzle> e : puzzles.entrySet()) {
+            Puzzle p = e.getValue();
+            pruningBuild(p, false); // warm-up
+            long[] off = pruningBuild(p, false);
+            long[] on = pruningBuild(p, true);
+            System.out.printf("%s: rows %d -> %d, nodes %d -> %d, build %.1f ms -> %.1f ms%n",
+                e.getKey(), off[0], on[0], off[1], on[1], ms(off[2]), ms(on[2]));
+
+            DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p);
+            builder.build();
+            int[] rows = builder.getPrunedRows();
+            long[] nodes = builder.getPrunedNodes();
+            ArrayList<Cage> cages = p.getCages();
+            for (int k = 0; k < cages.size(); k++) {
+                if (rows[k] == 0 || cages.get(k).getSize() == 1) continue; // 1-cell cages have nothing to prune
+                Cell first = cages.get(k).getCells().get(0);
+                System.out.printf("    cage %-3d (%s, %d cells, sum %d): %d rows, %d nodes saved%n",
+                    k, Helpers.label(first.getRow(), first.getCol()), cages.get(k).getSize(),
+                    cages.get(k).getTargetSum(), rows[k], nodes[k]);
+            }
+        }
+        System.out.println();
+    }
+
+    // returns {rows, nodes, build nanos}
+    private static long[] pruningBuild(Puzzle p, boolean pruning) {
+        long t0 = System.nanoTime();
+        DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p);
+        builder.setUnitPruning(pruning);
+        DLX dlx = builder.build();
+        long t1 = System.nanoTime();
+        return new long[] {dlx.getRowCount(), dlx.getNodeCount(), t1 - t0};
+    }
+
+    // ---- sequential vs parallel build ----
+
+    static void benchParallelBuild() {
+        LinkedHashMap<String, Puzzle> puzzles = new LinkedHashMap<>();
+        puzzles.put("strips of 6", stripPuzzle(6));
+        puzzles.put("strips of 7", stripPuzzle(7));
+        puzzles.put("boxes, 2 givens each", boxPuzzle(2));
+
+        System.out.println("Matrix construction on " + Runtime.getRuntime().availableProcessors() + " core(s), permutation encoding");
+        for (Map.Entry<String, Puzzle> e : puzzles.entrySet()) {
+            Puzzle p = e.getValue();
+            timedBuild(p, false); // warm-up
+            timedBuild(p, true);
+            long seq = timedBuild(p, false);
+            long par = timedBuild(p, true);
+
+            // same matrix either way: the first solutions must come out with identical row ids
+            boolean same = sameSolutions(p, 100);
+            System.out.printf("%-22s sequential %8.1f ms   parallel %8.1f ms   same solutions: %s%n",
+                e.getKey(), ms(seq), ms(par), same);
+        }
+        System.out.println();
+    }
+
+    private static long timedBuild(Puzzle p, boolean parallel) {
+        long t0 = System.nanoTime();
+        DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p);
+        builder.setParallel(parallel);
+        builder.build();
+        return System.nanoTime() - t0;
+    }
+
+    private static boolean sameSolutions(Puzzle p, int k) {
+        ArrayList<ArrayList<int[]>> results = new ArrayList<>();
+        for (boolean parallel : new boolean[] {false, true}) {
+            DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p);
+            builder.setParallel(parallel);
+            DLX dlx = builder.build();
+            dlx.setMaxSolutions(k);
+            results.add(new ArrayList<>(dlx.solveAll()));
+        }
+        if (results.get(0).size() != results.get(1).size()) return false;
+        for (int i = 0; i < results.get(0).size(); i++)
+            if (!Arrays.equals(results.get(0).get(i), results.get(1).get(i))) return false;
+        return true;
+    }
+
+    // ---- build throughput ----
+
+    static void benchThroughput() {
+        LinkedHashMap<String, Puzzle> puzzles = new LinkedHashMap<>();
+        puzzles.put("strips of 2", stripPuzzle(2));
+        puzzles.put("strips of 3", stripPuzzle(3));
+        puzzles.put("boxes, 4 givens each", boxPuzzle(4));
+
+        System.out.println("Build throughput (each matrix copies the prebuilt 324-column base template)");
+        for (Map.Entry<String, Puzzle> e : puzzles.entrySet()) {
+            Puzzle p = e.getValue();
+            for (int i = 0; i < 2000; i++) new DLX.KillerDLXBuilder(p).build(); // warm-up
+
+            int builds = 0;
+            long t0 = System.nanoTime(), deadline = t0 + 1_000_000_000L;
+            long now;
+            do {
+                DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p);
+                builder.setParallel(false); // batch callers parallelise across puzzles instead
+                builder.build();
+                builds++;
+            } while ((now = System.nanoTime()) < deadline);
+            System.out.printf("%-22s %8.0f matrices/s%n", e.getKey(), builds / ((now - t0) / 1e9));
+        }
+        System.out.println();
+    }
+
+    // ---- dancing links vs bitset engine ----
+
+    static void benchEngines() {
+        LinkedHashMap<String, Puzzle> puzzles = new LinkedHashMap<>();
+        puzzles.put("strips of 2", stripPuzzle(2));
+        puzzles.put("boxes, 4 givens each", boxPuzzle(4));
+        puzzles.put("strips of 3", stripPuzzle(3)); // these two have millions of solutions: counted up to the node limit
+        puzzles.put("boxes, 3 givens each", boxPuzzle(3));
+
+        // warm-up
+        for (int i = 0; i < 200; i++) {
+            engineRun(stripPuzzle(2), false);
+            engineRun(stripPuzzle(2), true);
+        }
+
+        System.out.println("Exact-cover engine: dancing links vs bitset (permutation encoding, count up to "
+            + ENGINE_NODE_LIMIT + " search nodes)");
+        System.out.printf("%-22s %-8s %10s %12s %10s %10s %10s %12s%n",
+            "puzzle", "engine", "solutions", "search nodes", "build ms", "first ms", "count ms", "nodes/s");
+        for (Map.Entry<String, Puzzle> e : puzzles.entrySet()) {
+            long[] links = engineRun(e.getValue(), false);
+            long[] bits = engineRun(e.getValue(), true);
+            for (long[] r : new long[][] {links, bits}) {
+                System.out.printf("%-22s %-8s %10d %12d %10.1f %10.2f %10.1f %12.0f%n",
+                    e.getKey(), r == links ? "links" : "bitset", r[0], r[1], ms(r[2]), ms(r[3]), ms(r[4]), r[1] / (r[4] / 1e9));
+            }
+            // both engines walk the same tree, so anything else is a bug
+            if (links[0] != bits[0] || links[1] != bits[1]) System.out.println("    MISMATCH between engines");
+        }
+        System.out.println();
+    }
+
+    private static final long ENGINE_NODE_LIMIT = 2_000_000;
+
+    // returns {solutions, search nodes, build nanos, first-solution nanos, count nanos}
+    private static long[] engineRun(Puzzle p, boolean bitset) {
+        long t0 = System.nanoTime();
+        DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p);
+        ExactCover dlx = bitset ? builder.buildInto(BitsetDLX.FACTORY) : builder.build();
+        long t1 = System.nanoTime();
+        if (dlx.solveFirst() == null) throw new IllegalStateException("benchmark puzzle has no solution");
+        long t2 = System.nanoTime();
+        dlx.setNodeLimit(ENGINE_NODE_LIMIT);
+        long count = dlx.countSolutions();
+        long t3 = System.nanoTime();
+        return new long[] {count, dlx.getNodes(), t1 - t0, t2 - t1, t3 - t2};
+    }
+
+    // ---- on-heap vs off-heap matrix ----
+
+    private static final int OFF_HEAP_ROUNDS = 3;             // build + solve + count cycles per engine, service style
+    private static final long OFF_HEAP_NODE_LIMIT = 1_000_000; // search nodes per count
+
+    static void benchOffHeap() {
+        ExactCover.Factory<?> offHeapFactory;
+        try {
+            offHeapFactory = Solver.offHeapFactory();
+        } catch (IllegalStateException e) {
+            System.out.println("offheap: skipped (" + e.getMessage() + ")");
+            System.out.println();
+            return;
+        }
+        LinkedHashMap<String, Puzzle> puzzles = new LinkedHashMap<>();
+        puzzles.put("strips of 6", stripPuzzle(6));
+        puzzles.put("strips of 7", stripPuzzle(7));
+        puzzles.put("boxes, 1 given each", boxPuzzle(1));
+
+        System.out.println("Matrix storage: DLX int arrays on the heap vs OffHeapDLX (MemorySegment), "
+            + OFF_HEAP_ROUNDS + " x (build, first solution, count up to " + OFF_HEAP_NODE_LIMIT + " nodes)");
+        System.out.printf("%-22s %-9s %12s %12s %12s %8s %10s %10s%n",
+            "puzzle", "matrix", "matrix nodes", "heap MB", "off-heap MB", "GCs", "GC ms", "total ms");
+        for (Map.Entry<String, Puzzle> e : puzzles.entrySet()) {
+            long[] heap = offHeapRun(e.getValue(), null);
+            long[] off = offHeapRun(e.getValue(), offHeapFactory);
+            for (long[] r : new long[][] {heap, off}) {
+                System.out.printf("%-22s %-9s %12d %12.1f %12.1f %8d %10d %10.0f%n",
+                    e.getKey(), r == heap ? "heap" : "off-heap", r[0], r[1] / 1048576.0, r[2] / 1048576.0, r[3], r[4], ms(r[5]));
+            }
+            if (heap[6] != off[6]) System.out.println("    MISMATCH between engines");
+        }
+        System.out.println("(heap MB = heap kept alive by one built matrix; GCs / GC ms = collections and their pause time over the rounds)");
+        System.out.println();
+    }
+
+    // returns {matrix nodes, heap bytes with the matrix built, off-heap bytes, GC count, GC millis, total nanos, solutions counted};
+    // offHeap is OffHeapDLX.FACTORY, or null for the on-heap DLX
+    private static long[] offHeapRun(Puzzle p, ExactCover.Factory<?> offHeap) {
+        // what the built matrix keeps alive (measured apart from the timed rounds: usedHeap() forces GCs)
+        long heapBefore = usedHeap();
+        ExactCover probe = (offHeap != null) ? new DLX.KillerDLXBuilder(p).buildInto(offHeap) : new DLX.KillerDLXBuilder(p).build();
+        long heapWithMatrix = usedHeap() - heapBefore;
+        long offBytes = offHeapBytes(probe);
+        long nodes = probe.getNodeCount();
+        Solver.release(probe);
+        probe = null;
+        usedHeap();
+
+        long[] gc0 = gcTotals();
+        long count = 0;
+        long t0 = System.nanoTime();
+        for (int round = 0; round < OFF_HEAP_ROUNDS; round++) {
+            DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p);
+            ExactCover dlx = (offHeap != null) ? builder.buildInto(offHeap) : builder.build();
+            try {
+                if (dlx.solveFirst() == null) throw new IllegalStateException("benchmark puzzle has no solution");
+                dlx.setNodeLimit(OFF_HEAP_NODE_LIMIT);
+                count = dlx.countSolutions();
+            } finally {
+                Solver.release(dlx); // off-heap: freed here, not by the GC
+            }
+        }
+        long total = System.nanoTime() - t0;
+        long[] gc1 = gcTotals();
+        return new long[] {nodes, heapWithMatrix, offBytes, gc1[0] - gc0[0], gc1[1] - gc0[1], total, count};
+    }
+
+    // OffHeapDLX.getOffHeapBytes(), called by name since OffHeapDLX is only compiled on Java 22+; 0 for other engines
+    private static long offHeapBytes(ExactCover dlx) {
+        try {
+            return (Long) dlx.getClass().getMethod("getOffHeapBytes").invoke(dlx);
+        } catch (ReflectiveOperationException e) {
+            return 0;
+        }
+    }
+
+    // {collections, millis} summed over every garbage collector
+    private static long[] gcTotals() {
+        long n = 0, t = 0;
+        for (java.lang.management.GarbageCollectorMXBean gc : java.lang.management.ManagementFactory.getGarbageCollectorMXBeans()) {
+            n += Math.max(0, gc.getCollectionCount());
+            t += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] {n, t};
+    }
+}
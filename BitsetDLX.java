@@ -0,0 +1,221 @@
+import java.util.*;
+
+/*
+ * BitsetDLX.java
+ *
+ * Exact-cover engine on word-parallel bitsets instead of dancing links. For the Killer Sudoku matrices
+ * (324 + a few hundred columns) a row is a handful of long words, so instead of unlinking nodes one by one
+ * (DLX.cover) the search state is two bitsets:
+ *   liveCols  columns not covered yet
+ *   liveRows  rows that don't clash with anything chosen so far
+ * and choosing row r is   liveCols &= ~cols(r);   liveRows &= ~rows(c) for every column c of r
+ * where rows(c) is the candidate-row bitmap of column c. Backtracking is free: every level has its own
+ * copy of the two bitsets.
+ *
+ * Columns are chosen like DLX.chooseColumn() (fewest live rows, leftmost on ties) and rows are tried in
+ * the order they were added, so both engines walk the same search tree and report solutions in the same order.
+ */
+public class BitsetDLX implements ExactCover {
+    // package-private: MemoCounter searches the same structure
+    final int numCols;
+    final int colWords;
+
+    // rows as added: caller's id, column bitset and column list
+    int numRows = 0;
+    private long nodeCount = 0;
+    int[] rowIds = new int[16];
+    long[][] rowColBits = new long[16][];
+    int[][] rowColList = new int[16][];
+
+    // built from the rows on the first solve (and rebuilt if rows are added later)
+    long[][] colRows;   // colRows[c] = bitmap of the rows with a 1 in column c
+    int[] colLo, colHi; // words of colRows[c] that can be non-zero: [colLo[c], colHi[c])
+    int rowWords;
+
+    // per-level search state
+    long[][] liveColsAt, liveRowsAt;
+    private int[] chosen; // row index chosen at each level
+
+    private long maxSolutions = Long.MAX_VALUE;
+    private long nodeLimit = Long.MAX_VALUE;
+    private long nodes = 0, found = 0;
+    private boolean stopAfterFirst = true, aborted = false;
+    private final ArrayList<int[]> solutions = new ArrayList<>();
+    private SolutionListener listener = null;
+    private int[] rowBuf = new int[16];
+
+    public BitsetDLX(int numCols) {
+        this.numCols = numCols;
+        this.colWords = (numCols + 63) >>> 6;
+    }
+
+    /* Factory for KillerDLXBuilder.buildInto(BitsetDLX.FACTORY). */
+    public static final Factory<BitsetDLX> FACTORY = (numCols, nodeCapacity) -> new BitsetDLX(numCols);
+
+    @Override
+    public void addRow(int rowId, int[] columnIndices, int from, int to) {
+        if (columnIndices == null || to <= from) return;
+        if (numRows == rowIds.length) {
+            rowIds = Arrays.copyOf(rowIds, numRows * 2);
+            rowColBits = Arrays.copyOf(rowColBits, numRows * 2);
+            rowColList = Arrays.copyOf(rowColList, numRows * 2);
+        }
+        Arrays.sort(columnIndices, from, to); // same row layout as DLX
+        long[] bits = new long[colWords];
+        for (int x = from; x < to; x++) bits[columnIndices[x] >>> 6] |= 1L << columnIndices[x];
+        rowIds[numRows] = rowId;
+        rowColBits[numRows] = bits;
+        rowColList[numRows] = Arrays.copyOfRange(columnIndices, from, to);
+        numRows++;
+        nodeCount += to - from;
+        colRows = null; // candidate bitmaps are out of date
+    }
+
+    // build the candidate-row bitmaps and the per-level state arrays
+    void freeze() {
+        if (colRows != null) return;
+        rowWords = Math.max(1, (numRows + 63) >>> 6);
+        colRows = new long[numCols][rowWords];
+        colLo = new int[numCols];
+        colHi = new int[numCols];
+        Arrays.fill(colLo, rowWords);
+        for (int r = 0; r < numRows; r++) {
+            int w = r >>> 6;
+            for (int c : rowColList[r]) {
+                colRows[c][w] |= 1L << r;
+                if (w < colLo[c]) colLo[c] = w;
+                if (w + 1 > colHi[c]) colHi[c] = w + 1;
+            }
+        }
+        int levels = numCols + 1; // every chosen row covers at least one column
+        liveColsAt = new long[levels][colWords];
+        liveRowsAt = new long[levels][rowWords];
+        chosen = new int[levels];
+    }
+
+    @Override public void setMaxSolutions(long k) { maxSolutions = (k <= 0) ? 1 : k; }
+    @Override public void setNodeLimit(long limit) { nodeLimit = (limit <= 0) ? Long.MAX_VALUE : limit; }
+    @Override public boolean wasAborted() { return aborted; }
+    @Override public long getNodes() { return nodes; }
+    @Override public int getRowCount() { return numRows; }
+    @Override public long getNodeCount() { return nodeCount; }
+    @Override public int getColumnCount() { return numCols; }
+
+    @Override
+    public int[] solveFirst() {
+        stopAfterFirst = true;
+        run(null);
+        return solutions.isEmpty() ? null : solutions.get(0);
+    }
+
+    @Override
+    public ArrayList<int[]> solveAll() {
+        stopAfterFirst = false;
+        run(null);
+        return solutions;
+    }
+
+    @Override
+    public long enumerate(SolutionListener l) {
+        stopAfterFirst = false;
+        return run(l);
+    }
+
+    private long run(SolutionListener l) {
+        freeze();
+        solutions.clear();
+        nodes = 0;
+        found = 0;
+        aborted = false;
+        listener = l;
+        startState();
+        try {
+            search(0);
+        } finally {
+            listener = null;
+        }
+        return found;
+    }
+
+    // level 0: every column and every row is live
+    void startState() {
+        long[] lc = liveColsAt[0], lr = liveRowsAt[0];
+        Arrays.fill(lc, 0);
+        for (int c = 0; c < numCols; c++) lc[c >>> 6] |= 1L << c;
+        Arrays.fill(lr, 0);
+        for (int r = 0; r < numRows; r++) lr[r >>> 6] |= 1L << r;
+    }
+
+    // state after choosing row r in state (lc, lr): its columns are covered, and every row sharing a column with it is gone
+    void choose(int r, long[] lc, long[] lr, long[] nextCols, long[] nextRows) {
+        long[] rc = rowColBits[r];
+        for (int i = 0; i < colWords; i++) nextCols[i] = lc[i] & ~rc[i];
+        System.arraycopy(lr, 0, nextRows, 0, rowWords);
+        for (int col : rowColList[r]) {
+            long[] clash = colRows[col];
+            for (int i = colLo[col]; i < colHi[col]; i++) nextRows[i] &= ~clash[i];
+        }
+    }
+
+    private boolean done() {
+        return aborted || found >= maxSolutions || (stopAfterFirst && found > 0);
+    }
+
+    private void search(int level) {
+        if (done()) return;
+        if (++nodes > nodeLimit) { aborted = true; return; }
+
+        long[] lc = liveColsAt[level], lr = liveRowsAt[level];
+        int c = chooseColumn(lc, lr);
+        if (c == -1) { // no live column left: solution
+            found++;
+            if (listener != null) {
+                if (rowBuf.length < level) rowBuf = new int[chosen.length];
+                for (int i = 0; i < level; i++) rowBuf[i] = rowIds[chosen[i]];
+                listener.onSolution(rowBuf, level);
+            } else {
+                int[] rows = new int[level];
+                for (int i = 0; i < level; i++) rows[i] = rowIds[chosen[i]];
+                solutions.add(rows);
+            }
+            return;
+        }
+        if (c == -2) return; // some column has no live row left: dead end
+
+        long[] cand = colRows[c];
+        long[] nextCols = liveColsAt[level + 1], nextRows = liveRowsAt[level + 1];
+        for (int w = colLo[c]; w < colHi[c]; w++) {
+            long bits = cand[w] & lr[w];
+            while (bits != 0) {
+                int r = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                choose(r, lc, lr, nextCols, nextRows);
+                chosen[level] = r;
+                search(level + 1);
+                if (done()) return;
+            }
+        }
+    }
+
+    // live column with the fewest live rows (leftmost on ties); -1 if no column is live, -2 if one can't be covered
+    int chooseColumn(long[] lc, long[] lr) {
+        int best = -1, bestSize = Integer.MAX_VALUE;
+        for (int w = 0; w < colWords; w++) {
+            long bits = lc[w];
+            while (bits != 0) {
+                int c = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                long[] cr = colRows[c];
+                int size = 0;
+                for (int i = colLo[c]; i < colHi[c] && size < bestSize; i++) size += Long.bitCount(cr[i] & lr[i]);
+                if (size < bestSize) {
+                    if (size == 0) return -2;
+                    best = c;
+                    bestSize = size;
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -1,187 +1,358 @@
+import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.stream.IntStream;
 /*
 * DLX.java
 *
 * - Dancing Links (Algorithm X) core
 * - KillerDLXBuilder: builds the exact-cover matrix for Killer Sudoku
 *
-* Note: column names are only for debugging/clarity; solver doesn't depend on them.
+* Note: column names are only for debugging/clarity; solver doesn't depend on them (and the builder doesn't make them).
 */
 
-public class DLX {
-
-    // building blocks for the 2d "toroidal" (circular) doubly linked list; circular as in each node is contained in a row and column node where you can traverse up/down and left/right to complete the column and row rings respectively
-    private static class Node {
-        Node L, R, U, D; 
-        public Column C;          // owning column header
-        int rowId;         // ID we give this row so we can decode a solution
-        Node() { L = R = U = D = this; }
-    }
-
-    // Column header is also a Node, but tracks "size" (# of 1s)
-    private static class Column extends Node {
-        int size = 0;
-        final String name;
-        Column(String name) 
-        {
-            this.name = name; 
-            this.C = this; 
-        }
-    }
-
-    private final Column head = new Column("head"); // sentinel value
-    private final ArrayList<Column> cols = new ArrayList<>();
-    private final ArrayList<Node> partial = new ArrayList<>(); // current partial solution (stack)
+public class DLX implements ExactCover {
+
+    // The 2d "toroidal" (circular) doubly linked list lives in parallel int arrays instead of Node objects:
+    // node i has neighbours L[i], R[i], U[i], D[i], owning column header C[i] and row id ROW[i].
+    // Node 0 is the head sentinel, nodes 1..numCols are the column headers (column j is node j + 1),
+    // and the data nodes of the rows follow. Plain arrays make a whole matrix cheap to copy (see the base
+    // template in KillerDLXBuilder) and keep millions of nodes out of the garbage collector's way.
+    private static final int HEAD = 0;
+
+    private int[] L, R, U, D, C, ROW;
+    private int[] size;        // size[column node] = # of 1s still in that column
+    private int numNodes;      // nodes in use (head + headers + data)
+    private final int numCols;
+    private final String[] names; // optional debugging names; null when built name-free
+
+    private int[] partial = new int[16]; // current partial solution (stack of row nodes)
+    private int depth = 0;
+    private int prefixDepth = 0;         // bottom of the stack holds rows forced with select()
+    private int[] rowNode = new int[16]; // rowId -> first node of that row (-1 = no such row)
     private final ArrayList<int[]> solutions = new ArrayList<>(); // potentially an array of solutions if we want all; otherwise only 1 
 
-    private static boolean stopAfterFirst = true; // 1 or all
+    private SolutionListener listener = null;
+    private int[] rowBuf = new int[16];
+    private long found = 0; // solutions found by the current solve (stored or streamed)
+
+    // per instance (not static) so several solvers can run side by side in a portfolio
+    private boolean stopAfterFirst = true; // 1 or all
 
-    public static void setStopAfterFirst(boolean b) // inputted when printing intro
+    public void setStopAfterFirst(boolean b) // inputted when printing intro
     {
         stopAfterFirst = b;
     }
 
-    private int maxSolutions = Integer.MAX_VALUE;
-    public void setMaxSolutions(int k) { maxSolutions = (k <= 0) ? 1 : k; }
+    private long maxSolutions = Long.MAX_VALUE;
+    public void setMaxSolutions(long k) { maxSolutions = (k <= 0) ? 1 : k; }
+
+    // Tie-breaking between columns of equal size in chooseColumn()
+    public static final int TIE_FIRST = 0;  // leftmost column wins (original behaviour)
+    public static final int TIE_LAST = 1;   // rightmost column wins
+    public static final int TIE_RANDOM = 2; // random among the tied columns (needs a seed)
+
+    private int tieBreak = TIE_FIRST;
+    private boolean shuffleRows = false; // try the rows of a column in random order (needs a seed)
+    private Random rng = null;           // null = fully deterministic search
+
+    // Node limit and cancellation, so a portfolio/restart driver can abandon a bad run
+    private long nodeLimit = Long.MAX_VALUE;
+    private long nodes = 0;
+    private volatile boolean cancelled = false;
+    private boolean aborted = false;
+
+    public void setTieBreak(int mode) { tieBreak = mode; }
+    public void setShuffleRows(boolean b) { shuffleRows = b; }
+    public void setSeed(long seed) { rng = new Random(seed); }
+    public void setNodeLimit(long limit) { nodeLimit = (limit <= 0) ? Long.MAX_VALUE : limit; }
+
+    /* Ask a running search (possibly on another thread) to stop as soon as possible. */
+    public void cancel() { cancelled = true; }
+    public boolean isCancelled() { return cancelled; }
+
+    /* True if the last solve stopped early because of the node limit or cancel(); results are then incomplete. */
+    public boolean wasAborted() { return aborted; }
+
+    /* Number of search nodes visited by the last solve. */
+    public long getNodes() { return nodes; }
+
+    // Checkpointing: every CHECK_MASK + 1 nodes we look at the clock, and write a checkpoint when the interval has passed
+    private static final long CHECK_MASK = (1L << 20) - 1;
+    private String checkpointPath = null;
+    private long checkpointIntervalNanos = 0;
+    private long lastCheckpointAt = 0;
+    private Checkpoint pendingResume = null; // applied by the next solve
+    private int[] resumePath = new int[0];   // row ids still to replay below the selection
+    private int resumeAt = 0;
+
+    /*
+     * Write the search state to path roughly every intervalMillis during the following solves (null turns it off).
+     * Only deterministic searches can be resumed, so this can't be combined with shuffled rows or random tie-breaks.
+     */
+    public void setCheckpoint(String path, long intervalMillis) {
+        checkpointPath = path;
+        checkpointIntervalNanos = Math.max(0, intervalMillis) * 1_000_000L;
+    }
 
     // Build header row with the given column names (left-to-right circular list).
     public DLX(String[] colNames) {
-        head.L = head.R = head; // empty ring initially
-        for (String nm : colNames) {
-            Column c = new Column(nm);
-            cols.add(c);
+        this(colNames.length, colNames, 0);
+    }
+
+    // Name-free header row of numCols columns, with room for nodeCapacity data nodes up front.
+    public DLX(int numCols, int nodeCapacity) {
+        this(numCols, null, nodeCapacity);
+    }
+
+    private DLX(int numCols, String[] names, int nodeCapacity) {
+        this.numCols = numCols;
+        this.names = names;
+        allocate(1 + numCols + Math.max(0, nodeCapacity));
+        L[HEAD] = R[HEAD] = U[HEAD] = D[HEAD] = HEAD; // empty ring initially
+        numNodes = 1;
+        Arrays.fill(rowNode, -1);
+        appendColumns(numCols);
+    }
+
+    // Copy of template's header row (bulk array copy) followed by extraCols more empty columns.
+    // Only meant for templates without rows, like the Sudoku base columns.
+    DLX(DLX template, int extraCols, int nodeCapacity) {
+        if (template.rowCount != 0) throw new IllegalArgumentException("Template must not contain rows.");
+        this.numCols = template.numCols + extraCols;
+        this.names = null;
+        allocate(1 + numCols + Math.max(0, nodeCapacity));
+        Arrays.fill(rowNode, -1);
+        int n = template.numNodes;
+        System.arraycopy(template.L, 0, L, 0, n);
+        System.arraycopy(template.R, 0, R, 0, n);
+        System.arraycopy(template.U, 0, U, 0, n);
+        System.arraycopy(template.D, 0, D, 0, n);
+        System.arraycopy(template.C, 0, C, 0, n);
+        System.arraycopy(template.size, 0, size, 0, n);
+        numNodes = n;
+        appendColumns(extraCols);
+    }
+
+    private void allocate(int cap) {
+        L = new int[cap]; R = new int[cap]; U = new int[cap]; D = new int[cap];
+        C = new int[cap]; ROW = new int[cap];
+        size = new int[1 + numCols];
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= L.length) return;
+        int cap = Math.max(needed, L.length * 2); // double size whenever needed
+        L = Arrays.copyOf(L, cap); R = Arrays.copyOf(R, cap);
+        U = Arrays.copyOf(U, cap); D = Arrays.copyOf(D, cap);
+        C = Arrays.copyOf(C, cap); ROW = Arrays.copyOf(ROW, cap);
+    }
+
+    private void appendColumns(int count) {
+        for (int k = 0; k < count; k++) {
+            int c = numNodes++;
             // insert c just before head (append)
-            c.R = head;
-            c.L = head.L;
-            head.L.R = c;
-            head.L = c;
+            R[c] = HEAD;
+            L[c] = L[HEAD];
+            R[L[HEAD]] = c;
+            L[HEAD] = c;
             // empty column (vertical ring to itself)
-            c.U = c.D = c;
+            U[c] = D[c] = c;
+            C[c] = c;
+            size[c] = 0;
         }
     }
 
+    /* Debugging name of column idx (0-based); "col<idx>" for name-free matrices. */
+    public String getColumnName(int idx) {
+        return (names != null) ? names[idx] : "col" + idx;
+    }
+
+    // matrix size, for memory reports
+    private int rowCount = 0;
+    private long nodeCount = 0;
+    public int getRowCount() { return rowCount; }
+    public long getNodeCount() { return nodeCount; }
+    public int getColumnCount() { return numCols; }
+
     // Add one exact-cover row: rowId helps us reconstruct the solution later.
-    public void addRow(int rowId, int[] columnIndices) {
-        if (columnIndices == null || columnIndices.length == 0) return;
+    // The row is stored in columnIndices[from..to) of a bigger buffer (the builder keeps all rows of a cage in one array);
+    // addRow(rowId, columnIndices) from ExactCover takes the whole array.
+    public void addRow(int rowId, int[] columnIndices, int from, int to) {
+        if (columnIndices == null || to <= from) return;
+        rowCount++;
+        nodeCount += to - from;
+        ensureCapacity(numNodes + (to - from));
 
         // Keep a horizontal ring of nodes for this row
-        Node first = null;
-        Node prev = null;
+        int first = -1;
+        int prev = -1;
 
         // Sorting is not required but fine for determinism
-        Arrays.sort(columnIndices);
+        Arrays.sort(columnIndices, from, to);
 
-        for (int idx : columnIndices) {
-            Column c = cols.get(idx);
-            Node n = new Node();
-            n.C = c;
-            n.rowId = rowId;
+        for (int x = from; x < to; x++) {
+            int c = columnIndices[x] + 1; // header node of that column
+            int n = numNodes++;
+            C[n] = c;
+            ROW[n] = rowId;
 
             // insert into bottom of column c (just above c itself)
-            n.D = c;
-            n.U = c.U;
-            c.U.D = n;
-            c.U = n;
-            c.size++;
+            D[n] = c;
+            U[n] = U[c];
+            D[U[c]] = n;
+            U[c] = n;
+            size[c]++;
 
             // link horizontally into the row ring
-            if (first == null) {
+            if (first < 0) {
                 first = n;
-                n.L = n.R = n;
+                L[n] = R[n] = n;
+                if (rowId >= 0) {
+                    if (rowId >= rowNode.length) {
+                        int old = rowNode.length;
+                        rowNode = Arrays.copyOf(rowNode, Math.max(rowId + 1, old * 2));
+                        Arrays.fill(rowNode, old, rowNode.length, -1);
+                    }
+                    rowNode[rowId] = n;
+                }
             } else {
-                n.L = prev;
-                n.R = prev.R;
-                prev.R.L = n;
-                prev.R = n;
+                L[n] = prev;
+                R[n] = R[prev];
+                L[R[prev]] = n;
+                R[prev] = n;
             }
             prev = n;
         }
     }
 
     // for heuristics choose the column with the smallest size (fewest 1s). otherwise, randomly could be chosen but with a deterministic machine this is best practice
-    private Column chooseColumn() {
+    private int chooseColumn() {
         int best = Integer.MAX_VALUE;
-        Column bestC = null;
-        for (Node x = head.R; x != head; x = x.R) {
-            Column c = (Column) x;
-            if (c.size < best) { best = c.size; bestC = c; }
+        int bestC = -1;
+        int ties = 0;
+        for (int c = R[HEAD]; c != HEAD; c = R[c]) {
+            if (size[c] < best) { best = size[c]; bestC = c; ties = 1; }
+            else if (size[c] == best) {
+                if (tieBreak == TIE_LAST) bestC = c;
+                else if (tieBreak == TIE_RANDOM && rng != null && rng.nextInt(++ties) == 0) bestC = c; // reservoir pick among ties
+            }
         }
         return bestC;
     }
 
+    // rows of column c in the order we should try them
+    private int[] rowOrder(int c) {
+        int[] order = new int[size[c]];
+        int n = 0;
+        for (int r = D[c]; r != c; r = D[r]) order[n++] = r;
+        for (int i = n - 1; i > 0; i--) { // Fisher-Yates
+            int j = rng.nextInt(i + 1);
+            int t = order[i]; order[i] = order[j]; order[j] = t;
+        }
+        return order;
+    }
+
     // Cover column c (remove it from the header row) and
     // remove rows that have a 1 in this column from all other columns they touch.
-    private void cover(Column c) {
-        c.R.L = c.L;
-        c.L.R = c.R;
-        for (Node i = c.D; i != c; i = i.D) { // traverse the column ring, stopping when loop back
-            for (Node j = i.R; j != i; j = j.R) {
+    private void cover(int c) {
+        R[L[c]] = R[c];
+        L[R[c]] = L[c];
+        for (int i = D[c]; i != c; i = D[i]) { // traverse the column ring, stopping when loop back
+            for (int j = R[i]; j != i; j = R[j]) {
                 // The following two lines are "unlinking" j to temporarily remove it
-                j.D.U = j.U;
-                j.U.D = j.D;
-                j.C.size--;
+                U[D[j]] = U[j];
+                D[U[j]] = D[j];
+                size[C[j]]--;
             }
         }
     }
 
     // Undo "cover"
-    private void uncover(Column c) {
-        for (Node i = c.U; i != c; i = i.U) {
-            for (Node j = i.L; j != i; j = j.L) {
-                j.C.size++;
+    private void uncover(int c) {
+        for (int i = U[c]; i != c; i = U[i]) {
+            for (int j = L[i]; j != i; j = L[j]) {
+                size[C[j]]++;
                 //reverse the unlinking by pointing neighbors back at j
-                j.D.U = j;
-                j.U.D = j;
+                U[D[j]] = j;
+                D[U[j]] = j;
             }
         }
-        c.R.L = c;
-        c.L.R = c;
+        L[R[c]] = c;
+        R[L[c]] = c;
+    }
+
+    // true once the search has what it needs (or has been told to give up)
+    private boolean done() {
+        return aborted
+            || found >= maxSolutions
+            || (stopAfterFirst && found > 0);
     }
 
     // Core recursive search
     private void search() {
-        if (solutions.size() >= maxSolutions) return;
+        if (done()) return;
+        if (resumeAt < resumePath.length) nodes--; // replaying a checkpoint: this node was counted before it
+        if (++nodes > nodeLimit || cancelled) { aborted = true; return; }
+        if ((nodes & CHECK_MASK) == 0 && checkpointPath != null) maybeCheckpoint();
 
         // If header row is empty (meaning that all columns are covered and hence removed) solution found.
-        if (head.R == head) {
-            int[] rows = new int[partial.size()];
-            for (int i = 0; i < partial.size(); i++) rows[i] = partial.get(i).rowId;
-            solutions.add(rows);
+        if (R[HEAD] == HEAD) {
+            found++;
+            if (listener != null) {
+                if (rowBuf.length < depth) rowBuf = new int[partial.length];
+                for (int i = 0; i < depth; i++) rowBuf[i] = ROW[partial[i]];
+                listener.onSolution(rowBuf, depth);
+            } else {
+                int[] rows = new int[depth];
+                for (int i = 0; i < depth; i++) rows[i] = ROW[partial[i]];
+                solutions.add(rows);
+            }
             return;
         }
 
-        Column c = chooseColumn();
-        if (c == null || c.size == 0) return; // dead end (no nodes in the chosen column, meaning no rows to satisfy the column)
+        int c = chooseColumn();
+        if (c < 0 || size[c] == 0) return; // dead end (no nodes in the chosen column, meaning no rows to satisfy the column)
 
         cover(c);
-        for (Node r = c.D; r != c; r = r.D) { // try each row with a node the chosen column
-            partial.add(r);
-            // cover all columns in this row
-            for (Node j = r.R; j != r; j = j.R) cover(j.C);
-
-            search(); // recurse
-            if (stopAfterFirst && !solutions.isEmpty()) { // if only one solution desired and it is found, leave after undoing the last part
-                // quick exit; unwind minimal necessary to be safe
-                for (Node j = r.L; j != r; j = j.L) uncover(j.C);
-                partial.remove(partial.size() - 1);
-                uncover(c);
-                return;
+        if (shuffleRows && rng != null) {
+            for (int r : rowOrder(c)) {
+                if (tryRow(r)) break;
+            }
+        } else {
+            int r = D[c];
+            if (resumeAt < resumePath.length) { // replaying a checkpoint: rows before the saved one were already explored
+                int want = resumePath[resumeAt++];
+                while (r != c && ROW[r] != want) r = D[r];
+                if (r == c) throw new IllegalStateException("Checkpoint does not match this matrix.");
+            }
+            for (; r != c; r = D[r]) { // try each row with a node the chosen column
+                if (tryRow(r)) break;
             }
-
-            // backtrack
-            for (Node j = r.L; j != r; j = j.L) uncover(j.C);
-            partial.remove(partial.size() - 1);
-
-            // --- ADD: also stop iterating if we hit the cap ---
-            if (solutions.size() >= maxSolutions) { uncover(c); return; }
-            // ---------------------------------------------------
         }
         uncover(c);
     }
 
+    // put row r into the partial solution, recurse, then backtrack. Returns true if the search should stop.
+    private boolean tryRow(int r) {
+        if (depth == partial.length) partial = Arrays.copyOf(partial, depth * 2);
+        partial[depth++] = r;
+        // cover all columns in this row
+        for (int j = R[r]; j != r; j = R[j]) cover(C[j]);
+
+        search(); // recurse
+
+        // backtrack (also when stopping early, so the matrix is left intact)
+        for (int j = L[r]; j != r; j = L[j]) uncover(C[j]);
+        depth--;
+
+        return done(); // first solution found, cap hit, node limit hit or cancelled
+    }
+
     /* Solve and return the first solution as an array of rowIds (or null if none). */
     public int[] solveFirst() {
         stopAfterFirst = true;
+        reset();
         search();
         return solutions.isEmpty() ? null : solutions.get(0);
     }
@@ -190,10 +361,273 @@ public class DLX {
     // Here, implementation can be changed to find a number like 5 solutions instead of all. No one really cares about the exact number of solutions if too big, and it will take too long.  
     public ArrayList<int[]> solveAll() {
         stopAfterFirst = false;
+        reset();
         search();
         return solutions;
     }
 
+    /* Walk every solution (up to the max-solutions cap) and hand each one to l without storing it. Returns how many were found. */
+    public long enumerate(SolutionListener l) {
+        stopAfterFirst = false;
+        reset();
+        listener = l;
+        try {
+            search();
+        } finally {
+            listener = null;
+        }
+        return found;
+    }
+
+    // clear per-solve state so the same matrix can be searched again (e.g. a restart with a new seed)
+    private void reset() {
+        solutions.clear();
+        depth = prefixDepth; // rows forced with select() stay part of every solution
+        nodes = 0;
+        found = 0;
+        aborted = false;
+        resumePath = new int[0];
+        resumeAt = 0;
+        if (checkpointPath != null && (shuffleRows || tieBreak == TIE_RANDOM))
+            throw new IllegalStateException("Checkpoints need a deterministic search (no shuffled rows or random tie-breaks).");
+        lastCheckpointAt = System.nanoTime();
+        if (pendingResume != null) { // carry on from a checkpoint instead of from scratch
+            nodes = pendingResume.nodes;
+            found = pendingResume.found;
+            resumePath = pendingResume.path;
+            pendingResume = null;
+        }
+    }
+
+    /** Search state written by a checkpoint: the forced prefix, the row chosen at every level below it, and the counters. */
+    public static class Checkpoint {
+        private static final long MAGIC = 0x444C58434B505431L; // "DLXCKPT1"
+
+        public final int numCols, rowCount; // to check it is resumed on the same matrix
+        public final long nodes, found;
+        public final int[] prefix;          // rows forced with select()
+        public final int[] path;            // rows chosen by search() below the prefix, top level first
+
+        Checkpoint(int numCols, int rowCount, long nodes, long found, int[] prefix, int[] path) {
+            this.numCols = numCols;
+            this.rowCount = rowCount;
+            this.nodes = nodes;
+            this.found = found;
+            this.prefix = prefix;
+            this.path = path;
+        }
+
+        /* Write to path + ".tmp" and rename, so a crash mid-write never leaves a broken checkpoint behind. */
+        public void write(String path) throws IOException {
+            Path target = Paths.get(path);
+            Path tmp = Paths.get(path + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeLong(MAGIC);
+                out.writeInt(numCols);
+                out.writeInt(rowCount);
+                out.writeLong(nodes);
+                out.writeLong(found);
+                out.writeInt(prefix.length);
+                for (int id : prefix) out.writeInt(id);
+                out.writeInt(this.path.length);
+                for (int id : this.path) out.writeInt(id);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        public static Checkpoint read(String path) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(path))))) {
+                if (in.readLong() != MAGIC) throw new IOException("Not a DLX checkpoint: " + path);
+                int numCols = in.readInt(), rowCount = in.readInt();
+                long nodes = in.readLong(), found = in.readLong();
+                int[] prefix = new int[in.readInt()];
+                for (int i = 0; i < prefix.length; i++) prefix[i] = in.readInt();
+                int[] rows = new int[in.readInt()];
+                for (int i = 0; i < rows.length; i++) rows[i] = in.readInt();
+                return new Checkpoint(numCols, rowCount, nodes, found, prefix, rows);
+            }
+        }
+    }
+
+    // called from search() on node entry: the saved state means "everything before this node is done"
+    private void maybeCheckpoint() {
+        long now = System.nanoTime();
+        if (now - lastCheckpointAt < checkpointIntervalNanos) return;
+        lastCheckpointAt = now;
+        int[] path = new int[depth - prefixDepth];
+        for (int i = prefixDepth; i < depth; i++) path[i - prefixDepth] = ROW[partial[i]];
+        try {
+            new Checkpoint(numCols, rowCount, nodes - 1, found, getSelected(), path).write(checkpointPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't write checkpoint " + checkpointPath, e);
+        }
+    }
+
+    /*
+     * Make the next solve carry on from a checkpoint instead of starting over. The matrix must be rebuilt
+     * from the same Puzzle (same builder options) and have nothing selected; the checkpoint's prefix is
+     * selected here. Solutions found before the checkpoint are only counted, not handed out again.
+     */
+    public void resume(Checkpoint cp) {
+        if (cp.numCols != numCols || cp.rowCount != rowCount)
+            throw new IllegalArgumentException("Checkpoint was written for a different matrix.");
+        if (prefixDepth != 0) throw new IllegalStateException("Unselect all rows before resuming.");
+        for (int id : cp.prefix) select(id);
+        pendingResume = cp;
+    }
+
+    /*
+     * Force row rowId into every solution from now on (cover all of its columns). Rows are selected on top
+     * of each other, so a sequence of select() calls pins a prefix of the search tree; the caller must only
+     * select rows that are still compatible with the ones already selected. Undo with unselect().
+     */
+    public void select(int rowId) {
+        if (depth != prefixDepth) throw new IllegalStateException("select() is not allowed during a search.");
+        int r = (rowId >= 0 && rowId < rowNode.length) ? rowNode[rowId] : -1;
+        if (r < 0) throw new IllegalArgumentException("No row with id " + rowId);
+        int j = r;
+        do { cover(C[j]); j = R[j]; } while (j != r);
+        if (depth == partial.length) partial = Arrays.copyOf(partial, depth * 2);
+        partial[depth++] = r;
+        prefixDepth = depth;
+    }
+
+    /* Undo the most recent select(). */
+    public void unselect() {
+        if (prefixDepth == 0 || depth != prefixDepth) throw new IllegalStateException("Nothing to unselect.");
+        int r = partial[--depth];
+        prefixDepth = depth;
+        int j = L[r];
+        while (j != r) { uncover(C[j]); j = L[j]; }
+        uncover(C[r]);
+    }
+
+    /* Undo every select(). */
+    public void unselectAll() {
+        while (prefixDepth > 0) unselect();
+    }
+
+    /* Row ids currently forced with select(), bottom of the stack first. */
+    public int[] getSelected() {
+        int[] out = new int[prefixDepth];
+        for (int i = 0; i < prefixDepth; i++) out[i] = ROW[partial[i]];
+        return out;
+    }
+
+    /* True if every column is covered by the selected rows, i.e. the selection is itself a solution. */
+    public boolean isSolved() { return R[HEAD] == HEAD; }
+
+    /*
+     * Row ids the search would branch on next: the rows of the column chooseColumn() picks in the current
+     * (selected) state, in the order search() tries them. Empty if that column can't be covered, or if the
+     * selection is already a solution.
+     */
+    public int[] branchRows() {
+        if (R[HEAD] == HEAD) return new int[0];
+        int c = chooseColumn();
+        int[] out = new int[size[c]];
+        int n = 0;
+        for (int r = D[c]; r != c; r = D[r]) out[n++] = ROW[r];
+        return out;
+    }
+
+    /*
+     * Split the search tree below the current selection into at least minUnits independent prefixes of row
+     * ids (breadth first; fewer if the tree is smaller than that). Every solution extends exactly one prefix.
+     * Leaves the selection as it was on entry.
+     */
+    public ArrayList<int[]> splitPrefixes(int minUnits) {
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        queue.add(new int[0]);
+        ArrayList<int[]> finished = new ArrayList<>(); // prefixes that are already complete solutions
+        while (!queue.isEmpty() && queue.size() + finished.size() < minUnits) {
+            int[] prefix = queue.poll();
+            for (int rowId : prefix) select(rowId);
+            if (isSolved()) {
+                finished.add(prefix);
+            } else {
+                for (int rowId : branchRows()) {
+                    int[] next = Arrays.copyOf(prefix, prefix.length + 1);
+                    next[prefix.length] = rowId;
+                    queue.add(next);
+                }
+            }
+            for (int i = 0; i < prefix.length; i++) unselect();
+        }
+        ArrayList<int[]> out = new ArrayList<>(finished);
+        out.addAll(queue);
+        return out;
+    }
+
+    /** Knuth's estimate of the search below the current selection (see estimate()). */
+    public static class Estimate {
+        public final int probes;
+        public final double nodes, nodesStdErr;         // estimated search() calls for a full count, and its standard error
+        public final double solutions, solutionsStdErr; // estimated number of solutions, and its standard error
+        public final long nanos;                        // time the probes took
+
+        Estimate(int probes, double nodes, double nodesStdErr, double solutions, double solutionsStdErr, long nanos) {
+            this.probes = probes;
+            this.nodes = nodes; this.nodesStdErr = nodesStdErr;
+            this.solutions = solutions; this.solutionsStdErr = solutionsStdErr;
+            this.nanos = nanos;
+        }
+
+        /* Rough 95% range of the node count: mean +- 2 standard errors (never below 1). */
+        public double nodesLow() { return Math.max(1, nodes - 2 * nodesStdErr); }
+        public double nodesHigh() { return nodes + 2 * nodesStdErr; }
+        public double solutionsLow() { return Math.max(0, solutions - 2 * solutionsStdErr); }
+        public double solutionsHigh() { return solutions + 2 * solutionsStdErr; }
+
+        @Override
+        public String toString() {
+            return String.format("~%.3g nodes (%.3g..%.3g), ~%.3g solutions (%.3g..%.3g), %d probes in %.1f ms",
+                nodes, nodesLow(), nodesHigh(), solutions, solutionsLow(), solutionsHigh(), probes, nanos / 1e6);
+        }
+    }
+
+    /*
+     * Knuth's estimator: each probe walks one random path down the search tree (a random row of the column
+     * chooseColumn() picks, at every level) and multiplies the branching factors met on the way. The sum of the
+     * running products is an unbiased estimate of the tree's node count, and the final product (if the path
+     * ends in a solution; 0 if it dies) one of its solution count. Averaging many probes gives the estimate,
+     * and their spread the standard error. The tree is heavy-tailed, so the true figure can be several times
+     * off with few probes; a few hundred probes take milliseconds and are usually within a small factor.
+     *
+     * Works below the current selection (so it can size a work unit) and leaves the selection as it was.
+     */
+    public Estimate estimate(int probes, Random rnd) {
+        long t0 = System.nanoTime();
+        probes = Math.max(1, probes);
+        double sumN = 0, sumN2 = 0, sumS = 0, sumS2 = 0;
+        for (int p = 0; p < probes; p++) {
+            double weight = 1, treeNodes = 1;
+            int selected = 0;
+            while (!isSolved()) {
+                int[] branches = branchRows();
+                if (branches.length == 0) { weight = 0; break; } // dead end: no solutions on this path
+                weight *= branches.length;
+                treeNodes += weight;
+                select(branches[rnd.nextInt(branches.length)]);
+                selected++;
+            }
+            for (int i = 0; i < selected; i++) unselect();
+            sumN += treeNodes; sumN2 += treeNodes * treeNodes;
+            sumS += weight; sumS2 += weight * weight;
+        }
+        double meanN = sumN / probes, meanS = sumS / probes;
+        return new Estimate(probes,
+            meanN, stdErr(sumN2, meanN, probes),
+            meanS, stdErr(sumS2, meanS, probes),
+            System.nanoTime() - t0);
+    }
+
+    private static double stdErr(double sumSquares, double mean, int n) {
+        if (n < 2) return mean; // one probe says nothing about its own spread
+        double var = Math.max(0, (sumSquares - n * mean * mean) / (n - 1));
+        return Math.sqrt(var / n);
+    }
+
     // Small dynamic int array (so we can avoid boxing)
     private static class IntArrayBuilder {
         int[] a;
@@ -228,18 +662,54 @@ public class DLX {
      *   81 box-digit constraints     (each (box,d) once)
      *   #cages cage-choice columns   (pick exactly one assignment per cage)
      *
-     * Rows =
+     * Rows (default "permutation" encoding) =
      *   For each cage of size k, for each k-length permutation of distinct digits that sum to target:
      *     map those digits to the k cells of the cage (in stored order),
      *     then set 1s in the 4 Sudoku constraints + the cage column.
      *
+     * Two-level encoding (twoLevelCages = true) adds 9 cage-digit columns per cage, (cage,d) once, and uses
+     *   - one "combination" row per digit set S of the cage: cage-choice column + (cage,d) for every d NOT in S
+     *   - one "placement" row per (cell, d): the 4 Sudoku constraints + (cage,d)
+     *   so each digit of the chosen set must be placed by exactly one cell of the cage. Rows grow with
+     *   combinations + 9 * cells instead of with permutations (9! rows for a 9-cell cage of 45).
+     *   Combination rows decode to no cells; placement rows decode to a single cell.
+     *
      * Givens are respected by filtering: if a cell has a given g, only rows with d=g survive.
+     * With unit pruning (on by default) givens and 1-cell cages also exclude their digit from the rest of
+     * their row, column and box, so rows that could never be part of a solution are not added at all.
      */
     static class KillerDLXBuilder {
         private final Puzzle puzzle;
+        private final boolean twoLevelCages;
         private final ArrayList<RowDecode> decodes = new ArrayList<>();
 
-        KillerDLXBuilder(Puzzle puzzle) { this.puzzle = puzzle; }
+        private boolean unitPruning = true;
+        private boolean parallel = true; // generate cage rows on the common fork/join pool
+        // digit fixed in each cell (0 = free, CONFLICT = fixed to two different digits), and where each digit is fixed in each unit (-1 = nowhere); 0-based cells
+        private static final int CONFLICT = -1; // a given and a 1-cell cage disagree: the cell can take no digit
+        private final int[] fixedDigit = new int[81];
+        private final int[][] rowFixedAt = new int[9][10];
+        private final int[][] colFixedAt = new int[9][10];
+        private final int[][] boxFixedAt = new int[9][10];
+        // per cage: rows and nodes that were never added thanks to pruning
+        private int[] prunedRows = new int[0];
+        private long[] prunedNodes = new long[0];
+
+        KillerDLXBuilder(Puzzle puzzle) { this(puzzle, false); }
+
+        KillerDLXBuilder(Puzzle puzzle, boolean twoLevelCages) {
+            this.puzzle = puzzle;
+            this.twoLevelCages = twoLevelCages;
+        }
+
+        /* Turn unit-level pruning by givens/1-cell cages on or off (on by default; off only filters a cell's own given). */
+        public void setUnitPruning(boolean b) { unitPruning = b; }
+
+        /* Generate cage rows in parallel (default) or on the calling thread. The matrix and row ids are the same either way. */
+        public void setParallel(boolean b) { parallel = b; }
+
+        public int[] getPrunedRows() { return prunedRows; }
+        public long[] getPrunedNodes() { return prunedNodes; }
 
         private static int cellColIndex(int r, int c) {               // 0..80
             return (r - 1) * 9 + (c - 1);
@@ -253,89 +723,248 @@ public class DLX {
         private static int boxDigitColIndex(int b, int d) {           // 243..323
             return 243 + b * 9 + (d - 1);
         }
+        private static int cageDigitColIndex(int numCages, int k, int d) { // after the cage-choice columns
+            return 324 + numCages + k * 9 + (d - 1);
+        }
+
+        // The 324 Sudoku columns are the same for every puzzle, so their name-free header row is built once
+        // per JVM and bulk-copied into each new matrix; only cage columns and cage rows are added per puzzle.
+        private static final DLX BASE_TEMPLATE = new DLX(324, 0);
 
+        // PLACEMENT_COLS[((cell0 * 9) + d - 1) * 4 ..+4) = cell, row-digit, col-digit and box-digit columns of digit d in cell0
+        private static final int[] PLACEMENT_COLS = new int[81 * 9 * 4];
+        static {
+            for (int r = 1; r <= 9; r++)
+                for (int c = 1; c <= 9; c++)
+                    for (int d = 1; d <= 9; d++) {
+                        int at = (cellColIndex(r, c) * 9 + d - 1) * 4;
+                        PLACEMENT_COLS[at] = cellColIndex(r, c);
+                        PLACEMENT_COLS[at + 1] = rowDigitColIndex(r, d);
+                        PLACEMENT_COLS[at + 2] = colDigitColIndex(c, d);
+                        PLACEMENT_COLS[at + 3] = boxDigitColIndex(Helpers.blockIndex0(r, c), d);
+                    }
+        }
+
+        /* Human-friendly name of a column of the matrix this builder makes (purely for debugging; the matrix itself is name-free). */
+        public String columnName(int idx) {
+            int numCages = puzzle.getCages().size();
+            if (idx < 81) return "Cell(r=" + (idx / 9 + 1) + ",c=" + (idx % 9 + 1) + ")";
+            if (idx < 162) return "Row(r=" + ((idx - 81) / 9 + 1) + ")#" + ((idx - 81) % 9 + 1);
+            if (idx < 243) return "Col(c=" + ((idx - 162) / 9 + 1) + ")#" + ((idx - 162) % 9 + 1);
+            if (idx < 324) return "Box(b=" + ((idx - 243) / 9) + ")#" + ((idx - 243) % 9 + 1);
+            if (idx < 324 + numCages) return "Cage#" + (idx - 324);
+            int k = (idx - 324 - numCages) / 9;
+            return "Cage#" + k + "#" + ((idx - 324 - numCages) % 9 + 1);
+        }
+
+        /* Build the matrix into a DLX that starts from the prebuilt base template. */
         public DLX build() {
+            return buildInto((numCols, nodeCapacity) -> new DLX(BASE_TEMPLATE, numCols - 324, nodeCapacity));
+        }
+
+        /* Build the same matrix into any exact-cover engine (same columns, rows and row ids as build()). */
+        public <E extends ExactCover> E buildInto(ExactCover.Factory<E> factory) {
             ArrayList<Cage> cages = puzzle.getCages();
+            decodes.clear();
 
-            // Column count (fixed 324 + #cages)
-            final int NUM_COLS = 324 + cages.size();
+            // Column count (fixed 324 + #cages, plus 9 cage-digit columns per cage in the two-level encoding)
+            final int NUM_COLS = 324 + cages.size() + (twoLevelCages ? 9 * cages.size() : 0);
 
-            // Make human-friendly names (purely for debugging)
-            String[] names = new String[NUM_COLS];
-            // 81 cells
+            computeFixedDigits(cages);
+            prunedRows = new int[cages.size()];
+            prunedNodes = new long[cages.size()];
+
+            // Generate every cage's rows into its own buffers; cages are independent, so this can run in parallel
+            IntStream ks = IntStream.range(0, cages.size());
+            if (parallel) ks = ks.parallel();
+            CageRows[] generated = ks.mapToObj(k -> twoLevelCages ? twoLevelRows(cages, k) : permutationRows(cages.get(k), k))
+                                     .toArray(CageRows[]::new);
+
+            // Copy the prebuilt Sudoku header row, add the cage columns, and size the node arrays exactly
+            int totalNodes = 0;
+            for (CageRows cr : generated) totalNodes += cr.cols.n;
+            E dlx = factory.create(NUM_COLS, totalNodes);
+
+            // Link them into the matrix on this thread, in cage order, so row ids are the same as a sequential build
+            int nextRowId = 0;
+            for (CageRows cr : generated) {
+                int colFrom = 0, cellFrom = 0;
+                for (int i = 0; i < cr.rowCount(); i++) {
+                    int colTo = cr.colEnd.a[i], cellTo = cr.cellEnd.a[i];
+                    dlx.addRow(nextRowId, cr.cols.a, colFrom, colTo);
+                    decodes.add(new RowDecode(cr.cageIndex,
+                        Arrays.copyOfRange(cr.cellR.a, cellFrom, cellTo),
+                        Arrays.copyOfRange(cr.cellC.a, cellFrom, cellTo),
+                        Arrays.copyOfRange(cr.cellD.a, cellFrom, cellTo)));
+                    nextRowId++;
+                    colFrom = colTo;
+                    cellFrom = cellTo;
+                }
+                prunedRows[cr.cageIndex] = cr.prunedRows;
+                prunedNodes[cr.cageIndex] = cr.prunedNodes;
+            }
+            return dlx;
+        }
+
+        // All rows of one cage, back to back in primitive buffers (no per-row objects until linking)
+        private static class CageRows {
+            final int cageIndex;
+            final IntArrayBuilder cols = new IntArrayBuilder(64);   // column indices of every row
+            final IntArrayBuilder colEnd = new IntArrayBuilder(16); // row i owns cols[colEnd[i-1] .. colEnd[i])
+            final IntArrayBuilder cellR = new IntArrayBuilder(16);  // decode info (r, c, d) of every row
+            final IntArrayBuilder cellC = new IntArrayBuilder(16);
+            final IntArrayBuilder cellD = new IntArrayBuilder(16);
+            final IntArrayBuilder cellEnd = new IntArrayBuilder(16); // row i owns cell*[cellEnd[i-1] .. cellEnd[i])
+            int prunedRows = 0;
+            long prunedNodes = 0;
+
+            CageRows(int cageIndex) { this.cageIndex = cageIndex; }
+
+            void col(int idx) { cols.add(idx); }
+            void placement(int r, int c, int d) { // the 4 Sudoku columns, from the precomputed table
+                int at = (cellColIndex(r, c) * 9 + d - 1) * 4;
+                for (int i = 0; i < 4; i++) cols.add(PLACEMENT_COLS[at + i]);
+            }
+            void cell(int r, int c, int d) { cellR.add(r); cellC.add(c); cellD.add(d); }
+            void endRow() { colEnd.add(cols.n); cellEnd.add(cellR.n); }
+            int rowCount() { return colEnd.n; }
+        }
+
+        // collect digits fixed by givens and by 1-cell cages (which is how Main enters givens)
+        private void computeFixedDigits(ArrayList<Cage> cages) {
+            Arrays.fill(fixedDigit, 0);
+            for (int i = 0; i < 9; i++) {
+                Arrays.fill(rowFixedAt[i], -1);
+                Arrays.fill(colFixedAt[i], -1);
+                Arrays.fill(boxFixedAt[i], -1);
+            }
             for (int r = 1; r <= 9; r++)
                 for (int c = 1; c <= 9; c++)
-                    names[cellColIndex(r, c)] = "Cell(r=" + r + ",c=" + c + ")";
-            // 81 row-digit
-            for (int r = 1; r <= 9; r++)
-                for (int d = 1; d <= 9; d++)
-                    names[rowDigitColIndex(r, d)] = "Row(r=" + r + ")#" + d;
-            // 81 col-digit
-            for (int c = 1; c <= 9; c++)
-                for (int d = 1; d <= 9; d++)
-                    names[colDigitColIndex(c, d)] = "Col(c=" + c + ")#" + d;
-            // 81 box-digit (box index 0..8)
-            for (int b = 0; b < 9; b++)
-                for (int d = 1; d <= 9; d++)
-                    names[boxDigitColIndex(b, d)] = "Box(b=" + b + ")#" + d;
-            // cage columns at the end
-            for (int k = 0; k < cages.size(); k++)
-                names[324 + k] = "Cage#" + k;
+                    fixDigit(r, c, puzzle.getGiven(r, c));
+            if (!unitPruning) return; // the cell's own given is always enforced; the rest only with pruning
+            for (Cage cg : cages) {
+                if (cg.getSize() != 1 || cg.getTargetSum() < 1 || cg.getTargetSum() > 9) continue;
+                Cell ce = cg.getCells().get(0);
+                fixDigit(ce.getRow(), ce.getCol(), cg.getTargetSum());
+            }
+        }
 
-            DLX dlx = new DLX(names);
+        private void fixDigit(int r, int c, int d) {
+            if (d == 0) return;
+            int cell = cellColIndex(r, c);
+            int old = fixedDigit[cell];
+            fixedDigit[cell] = (old == 0 || old == d) ? d : CONFLICT; // never let the last writer win
+            if (!unitPruning) return;
+            rowFixedAt[r - 1][d] = cell;
+            colFixedAt[c - 1][d] = cell;
+            boxFixedAt[Helpers.blockIndex0(r, c)][d] = cell;
+        }
 
-            // Build rows
-            int nextRowId = 0;
-            for (int k = 0; k < cages.size(); k++) {
-                Cage cg = cages.get(k);
-                ArrayList<Cell> cells = cg.getCells();
-                int K = cells.size();
-
-                // Generate all K-length permutations of distinct digits summing to target
-                ArrayList<int[]> perms = new ArrayList<>();
-                Helpers.genPermsSumDistinct(K, cg.getTargetSum(), perms);
-
-                // For each digit permutation, map digits -> cage's cells in stored order
-                for (int[] perm : perms) {
-                    // Filter by givens: if a cell has a given g, require perm[i] == g
-                    boolean ok = true;
-                    for (int i = 0; i < K && ok; i++) {
-                        Cell ce = cells.get(i);
-                        int given = puzzle.getGiven(ce.getRow(), ce.getCol());
-                        if (given != 0 && given != perm[i]) ok = false;
-                    }
-                    if (!ok) continue;
+        // can digit d go in (r,c) given everything fixed so far? (never, for a CONFLICT cell)
+        private boolean allowed(int r, int c, int d) {
+            int cell = cellColIndex(r, c);
+            if (fixedDigit[cell] != 0 && fixedDigit[cell] != d) return false;
+            int atRow = rowFixedAt[r - 1][d], atCol = colFixedAt[c - 1][d], atBox = boxFixedAt[Helpers.blockIndex0(r, c)][d];
+            return (atRow < 0 || atRow == cell) && (atCol < 0 || atCol == cell) && (atBox < 0 || atBox == cell);
+        }
 
-                    // Build the set of column indices this row will cover
-                    IntArrayBuilder colsToHit = new IntArrayBuilder(5 * K + 1);
+        // one row per digit permutation of the cage
+        private CageRows permutationRows(Cage cg, int k) {
+            CageRows out = new CageRows(k);
+            ArrayList<Cell> cells = cg.getCells();
+            int K = cells.size();
+
+            // Generate all K-length permutations of distinct digits summing to target
+            ArrayList<int[]> perms = new ArrayList<>();
+            Helpers.genPermsSumDistinct(K, cg.getTargetSum(), perms);
+
+            // For each digit permutation, map digits -> cage's cells in stored order
+            for (int[] perm : perms) {
+                // Filter by givens and unit exclusions: every cell must be allowed its digit
+                boolean ok = true;
+                for (int i = 0; i < K && ok; i++) {
+                    Cell ce = cells.get(i);
+                    if (!allowed(ce.getRow(), ce.getCol(), perm[i])) ok = false;
+                }
+                if (!ok) {
+                    out.prunedRows++;
+                    out.prunedNodes += 4 * K + 1;
+                    continue;
+                }
 
-                    // cage-choice column
-                    colsToHit.add(324 + k);
+                // cage-choice column
+                out.col(324 + k);
 
-                    // record for reconstruction
-                    int[] rArr = new int[K];
-                    int[] cArr = new int[K];
-                    int[] dArr = new int[K];
+                for (int i = 0; i < K; i++) {
+                    Cell ce = cells.get(i);
+                    int r = ce.getRow(), c = ce.getCol(), d = perm[i];
 
-                    for (int i = 0; i < K; i++) {
-                        Cell ce = cells.get(i);
-                        int r = ce.getRow(), c = ce.getCol(), d = perm[i];
-                        int b = Helpers.blockIndex0(r, c); // 0..8
+                    out.placement(r, c, d); // cell, row-digit, col-digit, box-digit
+                    out.cell(r, c, d);      // record for reconstruction
+                }
+                out.endRow();
+            }
+            return out;
+        }
 
-                        colsToHit.add(cellColIndex(r, c));
-                        colsToHit.add(rowDigitColIndex(r, d));
-                        colsToHit.add(colDigitColIndex(c, d));
-                        colsToHit.add(boxDigitColIndex(b, d));
+        // combination rows + per-cell placement rows (see class comment)
+        private CageRows twoLevelRows(ArrayList<Cage> cages, int k) {
+            CageRows out = new CageRows(k);
+            Cage cg = cages.get(k);
+            ArrayList<Cell> cells = cg.getCells();
+            int K = cells.size();
+            int numCages = cages.size();
+
+            // Digit sets of size K summing to target, as bitmasks over 1..9
+            ArrayList<int[]> combos = new ArrayList<>();
+            Helpers.genCombosSumDistinct(K, cg.getTargetSum(), combos);
+
+            // a fixed digit in the cage must be in the chosen set, and every digit of the set needs a cell that can take it
+            int requiredMask = 0;
+            int placeableMask = 0;
+            for (Cell ce : cells) {
+                int fixed = fixedDigit[cellColIndex(ce.getRow(), ce.getCol())];
+                if (fixed > 0) requiredMask |= 1 << fixed; // a CONFLICT cell has no placeable digit, which prunes every set
+                for (int d = 1; d <= 9; d++)
+                    if (allowed(ce.getRow(), ce.getCol(), d)) placeableMask |= 1 << d;
+            }
 
-                        rArr[i] = r; cArr[i] = c; dArr[i] = d;
+            int usableMask = 0; // digits that appear in at least one surviving combination
+            int anyMask = 0;    // digits that appear in any combination at all
+            for (int[] combo : combos) {
+                int mask = 0;
+                for (int d : combo) mask |= 1 << d;
+                anyMask |= mask;
+                if ((mask & requiredMask) != requiredMask || (mask & ~placeableMask) != 0) {
+                    out.prunedRows++;
+                    out.prunedNodes += 1 + (9 - K);
+                    continue;
+                }
+                usableMask |= mask;
+
+                out.col(324 + k);
+                for (int d = 1; d <= 9; d++)
+                    if ((mask & (1 << d)) == 0) out.col(cageDigitColIndex(numCages, k, d));
+                out.endRow(); // decodes to no cells
+            }
+
+            for (Cell ce : cells) {
+                int r = ce.getRow(), c = ce.getCol();
+                for (int d = 1; d <= 9; d++) {
+                    if ((anyMask & (1 << d)) == 0) continue;
+                    if ((usableMask & (1 << d)) == 0 || !allowed(r, c, d)) {
+                        out.prunedRows++;
+                        out.prunedNodes += 5;
+                        continue;
                     }
 
-                    dlx.addRow(nextRowId, colsToHit.toArray());
-                    decodes.add(new RowDecode(k, rArr, cArr, dArr));
-                    nextRowId++;
+                    out.placement(r, c, d);
+                    out.col(cageDigitColIndex(numCages, k, d));
+                    out.cell(r, c, d);
+                    out.endRow();
                 }
             }
-            return dlx;
+            return out;
         }
 
         public ArrayList<RowDecode> getRowDecodes() { return decodes; }
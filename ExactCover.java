@@ -0,0 +1,54 @@
+import java.util.*;
+
+/*
+ * ExactCover.java
+ *
+ * What KillerDLXBuilder and Solver need from an exact-cover engine. DLX (dancing links) is the default;
+ * BitsetDLX solves the same matrices with word-parallel bitsets. Columns are 0-based indices, rows are
+ * added with the caller's row ids, and solutions come back as lists of those row ids.
+ */
+public interface ExactCover {
+
+    /** Gets every solution of enumerate() as it is found, instead of it being stored. */
+    interface SolutionListener {
+        // rowIds[0..count) is the solution; the array is reused for the next one, so copy it if you keep it
+        void onSolution(int[] rowIds, int count);
+    }
+
+    /** Makes an empty engine with numCols columns and room for about nodeCapacity 1s. */
+    interface Factory<E extends ExactCover> {
+        E create(int numCols, int nodeCapacity);
+    }
+
+    // Add one row, stored in columnIndices[from..to) (the array may be reordered)
+    void addRow(int rowId, int[] columnIndices, int from, int to);
+
+    default void addRow(int rowId, int[] columnIndices) {
+        if (columnIndices == null) return;
+        addRow(rowId, columnIndices, 0, columnIndices.length);
+    }
+
+    void setMaxSolutions(long k);
+    void setNodeLimit(long limit);
+
+    /* Solve and return the first solution as an array of rowIds (or null if none). */
+    int[] solveFirst();
+
+    /* Solve and return all solutions (up to the max-solutions cap). */
+    ArrayList<int[]> solveAll();
+
+    /* Walk every solution (up to the cap) without storing it. Returns how many were found. */
+    long enumerate(SolutionListener l);
+
+    default long countSolutions() {
+        return enumerate((rowIds, count) -> { });
+    }
+
+    /* True if the last solve stopped because of the node limit (or was cancelled). */
+    boolean wasAborted();
+
+    long getNodes();
+    int getRowCount();
+    long getNodeCount();
+    int getColumnCount();
+}
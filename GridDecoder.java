@@ -0,0 +1,50 @@
+import java.util.*;
+
+/*
+ * GridDecoder.java
+ *
+ * Turns solutions (lists of DLX row ids) back into digits without allocating anything per solution.
+ * The RowDecode objects of the builder are flattened once into three int arrays:
+ *   row id -> [start[id], start[id+1]) entries of (cell 0..80, digit 1..9)
+ */
+public class GridDecoder {
+    private final int[] start;
+    private final int[] cell;
+    private final int[] digit;
+
+    public GridDecoder(List<DLX.RowDecode> decodes) {
+        start = new int[decodes.size() + 1];
+        int total = 0;
+        for (int i = 0; i < decodes.size(); i++) {
+            start[i] = total;
+            total += decodes.get(i).rows.length;
+        }
+        start[decodes.size()] = total;
+        cell = new int[total];
+        digit = new int[total];
+        int at = 0;
+        for (DLX.RowDecode rd : decodes) {
+            for (int i = 0; i < rd.rows.length; i++) {
+                cell[at] = Helpers.cellIndex0(rd.rows[i], rd.cols[i]);
+                digit[at] = rd.digits[i];
+                at++;
+            }
+        }
+    }
+
+    /* Write the digits of solution rowIds[0..count) into grid[0..81) (row-major, r*9+c). Cells not in the solution are left alone. */
+    public void decode(int[] rowIds, int count, int[] grid) {
+        for (int i = 0; i < count; i++) {
+            int id = rowIds[i];
+            for (int e = start[id]; e < start[id + 1]; e++) grid[cell[e]] = digit[e];
+        }
+    }
+
+    /* Add one to counts[cell*9 + digit-1] for every cell of solution rowIds[0..count). */
+    public void addCounts(int[] rowIds, int count, long[] counts) {
+        for (int i = 0; i < count; i++) {
+            int id = rowIds[i];
+            for (int e = start[id]; e < start[id + 1]; e++) counts[cell[e] * 9 + digit[e] - 1]++;
+        }
+    }
+}
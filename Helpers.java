@@ -57,6 +57,55 @@ public class Helpers {
         return out;
     }
 
+    // Parse one cage written as "<cells> <sum>", e.g. "A1A2B1 12", "A1 A2 B1 = 12" or "a1,a2,b1:12"
+    public static Cage parseCage(String s) {
+        s = s.trim();
+        int cut = Math.max(s.lastIndexOf('='), Math.max(s.lastIndexOf(':'), s.lastIndexOf(' '))); // the sum is the last token
+        if (cut < 0) throw new IllegalArgumentException("Cage needs cells and a sum, like \"A1A2B1 12\": " + s);
+        ArrayList<Cell> cells = parseCellsLine(s.substring(0, cut).replaceAll("[=:\\s]+$", "")); // "A1 A2 B1 =" -> "A1 A2 B1"
+        if (cells.isEmpty()) throw new IllegalArgumentException("No cells parsed for cage: " + s);
+        int sum;
+        try { sum = Integer.parseInt(s.substring(cut + 1).trim()); }
+        catch (NumberFormatException e) { throw new IllegalArgumentException("Bad sum in cage: " + s); }
+        if (sum <= 0) throw new IllegalArgumentException("Sum must be positive: " + s);
+        return new Cage(toRows(cells), toCols(cells), sum);
+    }
+
+    /** Gets each cage line of forEachCageLine(), trimmed and without its comment. */
+    public interface CageLineListener {
+        void onLine(String line);
+    }
+
+    // Walk a list of cages: one per line (or several separated by ';'), '#' starts a comment, blank lines are skipped.
+    public static void forEachCageLine(String text, CageLineListener l) {
+        for (String line : text.split("[\\r\\n;]+")) {
+            int hash = line.indexOf('#');
+            if (hash >= 0) line = line.substring(0, hash);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            l.onLine(line);
+        }
+    }
+
+    // Parse a list of cages in the forEachCageLine format (throws on the first bad cage)
+    public static ArrayList<Cage> parseCages(String text) {
+        ArrayList<Cage> out = new ArrayList<>();
+        forEachCageLine(text, line -> out.add(parseCage(line)));
+        return out;
+    }
+
+    // Parse a whole puzzle in the parseCages format
+    public static Puzzle parsePuzzle(String text) {
+        Puzzle p = new Puzzle();
+        for (Cage c : parseCages(text)) p.addCage(c);
+        return p;
+    }
+
+    // Read a puzzle file in the parsePuzzle format
+    public static Puzzle readPuzzle(String path) throws java.io.IOException {
+        return parsePuzzle(new String(java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(path)), "UTF-8"));
+    }
+
     // turn a list of cells into parallel row array
     public static int[] toRows(ArrayList<Cell> cells) {
         int[] rows = new int[cells.size()];
@@ -106,6 +155,25 @@ public class Helpers {
         }
     }
 
+    // make all k-element sets of distinct digits 1-9 that sum to targetSum (digits ascending)
+    // each int[] has length k; there are at most C(9,k) of them instead of the k! times more permutations
+    public static void genCombosSumDistinct(int k, int target, ArrayList<int[]> out) {
+        int[] curr = new int[k];
+        backtrackCombo(0, 1, k, target, curr, out);
+    }
+
+    private static void backtrackCombo(int pos, int minDigit, int k, int remain,
+                                       int[] curr, ArrayList<int[]> out) {
+        if (pos == k) {
+            if (remain == 0) out.add(Arrays.copyOf(curr, k));
+            return;
+        }
+        for (int d = minDigit; d <= 9 && d <= remain; d++) { // ascending digits, so each set shows up once
+            curr[pos] = d;
+            backtrackCombo(pos + 1, d + 1, k, remain - d, curr, out);
+        }
+    }
+
     // helper to render one 3-char tile with bg color and optional number on top
     private static String tile(int num, int id, String[] colors, String whitetext, String reset) {
         String content = (num == 0) ? " . " : (" " + num + " ");
@@ -8,8 +8,9 @@ import java.util.*;
  * Driver for Killer Sudoku:
  *  - lets you enter cages interactively (e.g., "A1 A2 B1" then sum)
  *  - supports undo via "delete <cells>" (e.g., "delete A1A2A3")
+ *  - "paste <cages or file>" adds many cages at once (e.g., "paste A1A2 12; B1 5") and renders once
  *  - renders your puzzle after each change (cages + legend)
- *  - builds DLX exact cover and solves
+ *  - hands the puzzle to Solver (which builds the DLX exact cover and solves)
  *  - prints the solved grid
  *
  * Notes:
@@ -58,51 +59,82 @@ public class Main {
         p.addCage(new Cage(rows, cols, sum));
     }
 
-    private static class CageDef {
-        final ArrayList<Cell> cells;
-        final int sum;
-        CageDef(ArrayList<Cell> cells, int sum) { this.cells = cells; this.sum = sum; }
+    // the cage whose cells are exactly `cells`, found through the puzzle's cell->cage index; null if none
+    private static Cage findCage(Puzzle p, ArrayList<Cell> cells) {
+        boolean[] seen = new boolean[81];
+        for (Cell ce : cells) {
+            int i = Helpers.cellIndex0(ce.getRow(), ce.getCol());
+            if (seen[i]) throw new IllegalArgumentException("Cell " + label(ce.getRow(), ce.getCol()) + " is listed twice.");
+            seen[i] = true; // otherwise "A1A1" would match the 2-cell cage A1A2
+        }
+        Cell first = cells.get(0);
+        Cage c = p.getCageAt(first.getRow(), first.getCol());
+        if (c == null || c.getSize() != cells.size()) return null;
+        for (Cell ce : cells) {
+            if (p.getCageAt(ce.getRow(), ce.getCol()) != c) return null;
+        }
+        return c;
     }
 
-    // build a Puzzle from current cage
-    private static Puzzle buildPuzzleFromDefs(List<CageDef> defs) {
-        Puzzle temp = new Puzzle();
-        for (CageDef d : defs) {
-            int[] rows = Helpers.toRows(d.cells);
-            int[] cols = Helpers.toCols(d.cells);
-            temp.addCage(new Cage(rows, cols, d.sum));
+    // "paste <cages>": add many cages at once, e.g. "paste A1A2 12; B1 5" or "paste puzzle.txt" (one cage per line)
+    private static void pasteCages(Puzzle p, String rest) {
+        String text = rest;
+        if (isFile(rest)) {
+            try {
+                text = new String(java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(rest)), "UTF-8");
+            } catch (java.io.IOException e) {
+                System.out.println("  Couldn't read " + rest + ": " + e.getMessage());
+                return;
+            }
         }
-        return temp;
+
+        int[] addedFailed = new int[2];
+        Helpers.forEachCageLine(text, line -> {
+            try {
+                p.addCage(Helpers.parseCage(line)); // throws (and leaves p unchanged) on overlap
+                addedFailed[0]++;
+            } catch (IllegalArgumentException e) {
+                System.out.println("  Skipped \"" + line + "\": " + e.getMessage());
+                addedFailed[1]++;
+            }
+        });
+        int added = addedFailed[0], failed = addedFailed[1];
+        System.out.println("  Pasted " + added + " cage(s)" + (failed > 0 ? ", skipped " + failed : "") + ".");
+        Helpers.render(p); // once for the whole paste
     }
 
-    private static String keyForCells(ArrayList<Cell> cells) {
-        int[] keys = new int[cells.size()];
-        for (int i = 0; i < cells.size(); i++) {
-            Cell ce = cells.get(i);
-            keys[i] = (ce.getRow() - 1) * 9 + ce.getCol();
+    private static boolean isFile(String s) {
+        if (s.isEmpty()) return false;
+        try {
+            return java.nio.file.Files.isRegularFile(java.nio.file.Paths.get(s));
+        } catch (java.nio.file.InvalidPathException e) {
+            return false; // cage text like "A1A2 12; B1=5" isn't a path on every platform
         }
-        Arrays.sort(keys);
-        return Arrays.toString(keys);
     }
 
-    // read cages interactively until user types "done"
+    // read cages interactively until user types "done"; cages go straight into p (edited in place)
     private static void inputCages(Scanner sc, Puzzle p) {
         System.out.println("Enter cages. Example:");
         System.out.println("  Cells:  A1 A2 B1");
         System.out.println("  Sum:    12");
         System.out.println("Type 'done' when finished.\n");
         System.out.println("Remember, letters correspond to columns and numbers to rows. B7, for instance, is the 7th row and 2nd column.");
+        System.out.println("To add many cages at once: 'paste A1A2 12; B1 5; ...' or 'paste <file>' (one cage per line, cells then sum).");
 
-        // keep editable list locally; we only commit to 'p' when you're done
-        ArrayList<CageDef> defs = new ArrayList<>();
-
-        int idx = 1;
         while (true) {
-            System.out.print("\nCage #" + idx + " cells (e.g., \"A1 A2 B1\" or 'done' or 'delete A1A2A3'): ");
+            int idx = p.getCageCount() + 1;
+            System.out.print("\nCage #" + idx + " cells (e.g., \"A1 A2 B1\" or 'done' or 'delete A1A2A3' or 'paste ...'): ");
+            if (!sc.hasNextLine()) break;
             String cellsLine = sc.nextLine().trim();
             if (cellsLine.equalsIgnoreCase("done")) break;
             if (cellsLine.isEmpty()) { System.out.println("  (empty; try again)"); continue; }
 
+            // bulk add: "paste <cages or file>"
+            if (cellsLine.toLowerCase().startsWith("paste")) {
+                pasteCages(p, cellsLine.substring(5).trim());
+                continue;
+            }
+
             // handle deletion: "delete <cells>"
             if (cellsLine.toLowerCase().startsWith("delete")) {
                 String rest = cellsLine.substring(6).trim(); // after "delete"
@@ -110,30 +142,19 @@ public class Main {
                     ArrayList<Cell> targetCells = Helpers.parseCellsLine(rest);
                     if (targetCells.isEmpty()) {
                         System.out.println("  Couldn't parse which cage to delete. Example: delete A1A2A3");
+                        continue;
+                    }
+                    Cage target = findCage(p, targetCells);
+                    if (target != null) {
+                        p.removeCage(target);
+                        System.out.println("  Deleted cage: " + rest);
+                        Helpers.render(p); // render current state after deletion
                     } else {
-                        String targetKey = keyForCells(targetCells);
-                        int removeAt = -1;
-                        for (int i = 0; i < defs.size(); i++) {
-                            if (keyForCells(defs.get(i).cells).equals(targetKey)) { removeAt = i; break; }
-                        }
-                        if (removeAt >= 0) {
-                            defs.remove(removeAt);
-                            System.out.println("  Deleted cage: " + rest);
-                        } else {
-                            System.out.println("  No cage matches those cells.");
-                        }
+                        System.out.println("  No cage matches those cells.");
                     }
                 } catch (IllegalArgumentException e) {
                     System.out.println("  Couldn't parse delete request: " + e.getMessage());
                 }
-
-                // render current state after deletion
-                try {
-                    Puzzle preview = buildPuzzleFromDefs(defs);
-                    Helpers.render(preview);
-                } catch (IllegalArgumentException e) {
-                    // shouldn't happen on deletion
-                }
                 continue;
             }
 
@@ -149,30 +170,15 @@ public class Main {
                 continue;
             }
 
-            // try adding (via preview) to catch overlaps immediately
+            // add straight into the puzzle; it checks overlaps against its cell index and changes nothing on failure
             try {
-                ArrayList<Cell> cells = Helpers.parseCellsLine(cellsLine);
-                CageDef newDef = new CageDef(cells, sum);
-
-                ArrayList<CageDef> test = new ArrayList<>(defs);
-                test.add(newDef);
-
-                Puzzle preview = buildPuzzleFromDefs(test); // will throw if overlap
-                defs.add(newDef);                           // commit
-                Helpers.render(preview);                   // visualize after each add
-                idx++;
+                addCage(p, cellsLine, sum);
+                Helpers.render(p); // visualize after each add
             } catch (IllegalArgumentException ex) {
                 System.out.println("  Couldn't add cage: " + ex.getMessage());
                 System.out.println("  (Tip: cells must be unique across cages.)");
             }
         }
-
-        // commit all defs into the real puzzle
-        for (CageDef d : defs) {
-            int[] rows = Helpers.toRows(d.cells);
-            int[] cols = Helpers.toCols(d.cells);
-            p.addCage(new Cage(rows, cols, d.sum));
-        }
         System.out.println();
     }
 
@@ -231,7 +237,7 @@ public class Main {
     }
 
     // print a solved grid (simple ASCII, with A..I header)
-    private static void printGrid(int[][] grid) {
+    private static void printGrid(int[] grid) {
         System.out.println("\nSolved grid:");
         System.out.print("   ");
         for (int c = 0; c < 9; c++) System.out.print(" " + (char)('A' + c) + " ");
@@ -240,14 +246,24 @@ public class Main {
             System.out.printf("%d ", r);
             if (r < 10) System.out.print(" ");
             for (int c = 1; c <= 9; c++) {
-                int d = grid[r - 1][c - 1];
+                int d = grid[(r - 1) * 9 + (c - 1)];
                 System.out.print(d == 0 ? " . " : (" " + d + " "));
             }
             System.out.println();
         }
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException {
+        // optional: "--portfolio [seed]" races several randomized solver configurations for the 'one' mode
+        boolean usePortfolio = false;
+        long portfolioSeed = System.nanoTime();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--portfolio")) {
+                usePortfolio = true;
+                if (i + 1 < args.length && args[i + 1].matches("-?\\d+")) portfolioSeed = Long.parseLong(args[++i]);
+            }
+        }
+
         Scanner sc = new Scanner(System.in);
         Puzzle p = new Puzzle();
     
@@ -271,52 +287,38 @@ public class Main {
         //  show puzzle (cage colors)
         Helpers.render(p);
     
-        //  build DLX and solve
-        DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p);
-        DLX dlx = builder.build();
+        //  solve
+        Solver.Options options = new Solver.Options();
+        if (wantAll) {
+            options.mode(Solver.ALL); // no cap: solutions are packed into a SolutionStore, which spills to disk past its memory budget
+        } else {
+            options.mode(Solver.FIRST);
+            if (usePortfolio) options.portfolio(portfolioSeed);
+        }
+        Solver.Result res = Solver.solve(p, options);
 
-        int[] chosenRowIds;
-        ArrayList<DLX.RowDecode> decodes = builder.getRowDecodes();
+        if (res.portfolioWinner != null) {
+            System.out.println("Portfolio seed " + portfolioSeed + ": won by " + res.portfolioWinner
+                + " after " + res.nodes + " nodes.");
+        }
+        if (!res.solved()) {
+            System.out.println("\nNo solution found. (Check sums, distinctness, and single-cell givens.)");
+            return;
+        }
 
         if (wantAll) {
-            dlx.setMaxSolutions(10); // In this version, when you type "all" we cap at 10 solutions to avoid excessive memory use (not a memory leak).
-            ArrayList<int[]> all = dlx.solveAll();
-            if (all.isEmpty()) {
-                System.out.println("\nNo solution found. (Check sums, distinctness, and single-cell givens.)");
-                return;
-            }
-
-            System.out.println("Found " + all.size() + " solution(s). Printing all:");
-            for (int s = 0; s < all.size(); s++) {
-                int[][] grid = new int[9][9];
-                for (int rowId : all.get(s)) {
-                    DLX.RowDecode rd = decodes.get(rowId);
-                    for (int i = 0; i < rd.rows.length; i++) {
-                        int r = rd.rows[i], c = rd.cols[i], d = rd.digits[i];
-                        grid[r - 1][c - 1] = d;
-                    }
+            try (SolutionStore store = res.solutions) {
+                long total = store.size();
+                System.out.println("Found " + total + " solution(s). Printing all:");
+                SolutionStore.Reader reader = store.reader();
+                int[] grid = new int[81];
+                for (long s = 1; reader.next(grid); s++) {
+                    System.out.println("\nSolution " + s + " of " + total + ":");
+                    printGrid(grid);
                 }
-                System.out.println("\nSolution " + (s + 1) + " of " + all.size() + ":");
-                printGrid(grid);
             }
-            return; // done printing all
         } else {
-            chosenRowIds = dlx.solveFirst();
-            if (chosenRowIds == null) {
-                System.out.println("\nNo solution found. (Check sums, distinctness, and single-cell givens.)");
-                return;
-            }
-
-            // reconstruct single solution and print
-            int[][] grid = new int[9][9];
-            for (int rowId : chosenRowIds) {
-                DLX.RowDecode rd = decodes.get(rowId);
-                for (int i = 0; i < rd.rows.length; i++) {
-                    int r = rd.rows[i], c = rd.cols[i], d = rd.digits[i];
-                    grid[r - 1][c - 1] = d;
-                }
-            }
-            printGrid(grid);
+            printGrid(res.grid);
         }
     }
-}
\ No newline at end of file
+}
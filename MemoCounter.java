@@ -0,0 +1,274 @@
+import java.util.*;
+
+/*
+ * MemoCounter.java
+ *
+ * Exact solution counting with a memo over residual subproblems, for puzzles where enumerating every
+ * solution one by one is hopeless.
+ *
+ * In exact cover the rest of the problem after any choices is fixed by the set of live (uncovered) columns:
+ * a row is still usable exactly when none of its columns are covered. Many different paths through the search
+ * tree end in the same live-column set (e.g. two cages filled in either order, or two digits swapped between
+ * cells of the same row and box), and plain DLX counts that subtree again every time. Here the live columns
+ * (BitsetDLX's liveCols bitset) are the memo key, and the count below them is stored the first time round.
+ *
+ * The memo is bounded: it keeps at most maxEntries subproblems and evicts the least recently used one, so a
+ * small budget still gets the hits that matter (the shallow, frequently reached states) without running out of heap.
+ *
+ * buildZdd() uses the same recursion to build the whole solution family as a shared DAG of (row, lo, hi)
+ * nodes (see Zdd) instead of a number.
+ *
+ *   MemoCounter mc = new DLX.KillerDLXBuilder(puzzle).buildInto(MemoCounter.FACTORY);
+ *   long n = mc.count();
+ *   System.out.println(mc.getStats());
+ */
+public class MemoCounter extends BitsetDLX {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 20;
+
+    /* Factory for KillerDLXBuilder.buildInto(MemoCounter.FACTORY), with the default memo size. */
+    public static final Factory<MemoCounter> FACTORY = (numCols, nodeCapacity) -> new MemoCounter(numCols, DEFAULT_MAX_ENTRIES);
+
+    /** Memo statistics of the last count() or buildZdd(). */
+    public static class Stats {
+        public long nodes;      // subproblems visited (memo hits included)
+        public long lookups;    // subproblems looked up in the memo (dead ends and solutions aren't)
+        public long hits;
+        public long evictions;
+        public int peakEntries;
+
+        public double hitRate() { return lookups == 0 ? 0 : (double) hits / lookups; }
+
+        @Override
+        public String toString() {
+            return String.format("%d nodes, %d memo lookups, %d hits (%.1f%%), %d evictions, peak %d entries",
+                nodes, lookups, hits, 100 * hitRate(), evictions, peakEntries);
+        }
+    }
+
+    // live-column set used as a hash key; the words are copied only when an entry is stored
+    private static final class Key {
+        final long[] words;
+        final int hash;
+        Key(long[] words) { this.words = words; this.hash = Arrays.hashCode(words); }
+        @Override public int hashCode() { return hash; }
+        @Override public boolean equals(Object o) { return o instanceof Key && Arrays.equals(words, ((Key) o).words); }
+    }
+
+    private final int maxEntries;
+    private LinkedHashMap<Key, Long> memo;
+    private Stats stats = new Stats();
+
+    public MemoCounter(int numCols, int maxEntries) {
+        super(numCols);
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    public Stats getStats() { return stats; }
+
+    /*
+     * Exact number of solutions. Throws ArithmeticException if it doesn't fit in a long (more than ~9.2e18,
+     * which only a nearly empty 9x9 grid gets near).
+     */
+    public long count() {
+        freeze();
+        stats = new Stats();
+        memo = new LinkedHashMap<Key, Long>(16, 0.75f, true) { // access order: the eldest entry is the least recently used
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+                if (size() <= maxEntries) return false;
+                stats.evictions++;
+                return true;
+            }
+        };
+        startState();
+        try {
+            return count(0);
+        } finally {
+            memo = null; // let the table go
+        }
+    }
+
+    private long count(int level) {
+        stats.nodes++;
+        long[] lc = liveColsAt[level], lr = liveRowsAt[level];
+        int c = chooseColumn(lc, lr);
+        if (c == -1) return 1; // nothing left to cover: one way (the rows chosen so far)
+        if (c == -2) return 0;
+
+        stats.lookups++;
+        Long known = memo.get(new Key(lc));
+        if (known != null) { stats.hits++; return known; }
+
+        long total = 0;
+        long[] cand = colRows[c];
+        long[] nextCols = liveColsAt[level + 1], nextRows = liveRowsAt[level + 1];
+        for (int w = colLo[c]; w < colHi[c]; w++) {
+            long bits = cand[w] & lr[w];
+            while (bits != 0) {
+                int r = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                choose(r, lc, lr, nextCols, nextRows);
+                total = Math.addExact(total, count(level + 1));
+            }
+        }
+        memo.put(new Key(lc.clone()), total);
+        if (memo.size() > stats.peakEntries) stats.peakEntries = memo.size();
+        return total;
+    }
+
+    // ---- ZDD ----
+
+    /*
+     * The whole solution family as a ZDD-style DAG. Node ids 0 and 1 are the empty family and {{}} ; any other
+     * node n stands for   lo(n)  plus  { S + row(n) : S in hi(n) }.  Equal (row, lo, hi) triples are shared, and
+     * so are equal subproblems (same live columns), so the DAG can be far smaller than the list of solutions.
+     *
+     * Rows appear in search order rather than one global order, so this is not a canonical (ordered) ZDD:
+     * two equal families may get different nodes. Counting, listing and walking the family all work as usual.
+     */
+    public static class Zdd {
+        public static final int EMPTY = 0; // no solutions
+        public static final int UNIT = 1;  // exactly the empty solution
+
+        private int[] var = new int[1024], lo = new int[1024], hi = new int[1024];
+        private int size = 2;
+        private int[] table = new int[2048]; // open addressing on (var, lo, hi) -> node id; 0 = free slot
+        private int root = EMPTY;
+
+        public int getRoot() { return root; }
+        public int size() { return size; } // nodes, including the two terminals
+        public int getRow(int n) { return var[n]; }
+        public int getLo(int n) { return lo[n]; }
+        public int getHi(int n) { return hi[n]; }
+
+        // the node (row, l, h), shared with an existing equal node; a node with h == EMPTY is just l
+        int make(int row, int l, int h) {
+            if (h == EMPTY) return l;
+            int mask = table.length - 1;
+            int i = hash(row, l, h) & mask;
+            for (int n; (n = table[i]) != 0; i = (i + 1) & mask) {
+                if (var[n] == row && lo[n] == l && hi[n] == h) return n;
+            }
+            if (size == var.length) {
+                var = Arrays.copyOf(var, size * 2);
+                lo = Arrays.copyOf(lo, size * 2);
+                hi = Arrays.copyOf(hi, size * 2);
+            }
+            int n = size++;
+            var[n] = row; lo[n] = l; hi[n] = h;
+            table[i] = n;
+            if (2 * size > table.length) rehash();
+            return n;
+        }
+
+        private static int hash(int row, int l, int h) {
+            int x = row * 0x9E3779B1 + l * 0x85EBCA77 + h * 0xC2B2AE3D;
+            return x ^ (x >>> 15);
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int n = 2; n < size; n++) {
+                int i = hash(var[n], lo[n], hi[n]) & mask;
+                while (table[i] != 0) i = (i + 1) & mask;
+                table[i] = n;
+            }
+        }
+
+        /* Number of solutions in the family below n (throws ArithmeticException past Long.MAX_VALUE). */
+        public long count(int n) {
+            // make() only links to nodes that already exist, so ids are a topological order: children come first
+            if (n <= UNIT) return n;
+            long[] memo = new long[n + 1];
+            memo[UNIT] = 1;
+            for (int m = UNIT + 1; m <= n; m++) memo[m] = Math.addExact(memo[lo[m]], memo[hi[m]]);
+            return memo[n];
+        }
+
+        /* Hand every solution below n to l as row ids (the array is reused, as in DLX.enumerate). */
+        public long forEach(int n, SolutionListener l) {
+            // iterative depth-first walk: take each hi branch first and keep its lo sibling on a stack, so neither
+            // long lo chains nor deep solutions use the call stack; solutions come out in the same order as before
+            int[] path = new int[64];
+            int[] stackNode = new int[64], stackDepth = new int[64];
+            int top = 0, depth = 0;
+            long found = 0;
+            while (true) {
+                while (n > UNIT) { // each hi branch adds var[n] to the solution
+                    if (depth == path.length) path = Arrays.copyOf(path, depth * 2);
+                    if (top == stackNode.length) {
+                        stackNode = Arrays.copyOf(stackNode, top * 2);
+                        stackDepth = Arrays.copyOf(stackDepth, top * 2);
+                    }
+                    stackNode[top] = lo[n];
+                    stackDepth[top++] = depth;
+                    path[depth++] = var[n];
+                    n = hi[n];
+                }
+                if (n == UNIT) { l.onSolution(path, depth); found++; }
+                if (top == 0) return found;
+                n = stackNode[--top];
+                depth = stackDepth[top];
+            }
+        }
+    }
+
+    private HashMap<Key, Integer> zmemo;
+    private Zdd zdd;
+
+    /*
+     * Build the solution family as a Zdd. Unlike count() this memo can't evict (its entries are node ids the
+     * DAG refers to), so the subproblem table grows with the number of distinct live-column states reached.
+     */
+    public Zdd buildZdd() {
+        freeze();
+        stats = new Stats();
+        zmemo = new HashMap<>();
+        zdd = new Zdd();
+        startState();
+        try {
+            zdd.root = zdd(0);
+            return zdd;
+        } finally {
+            zmemo = null;
+            zdd = null;
+        }
+    }
+
+    private int zdd(int level) {
+        stats.nodes++;
+        long[] lc = liveColsAt[level], lr = liveRowsAt[level];
+        int c = chooseColumn(lc, lr);
+        if (c == -1) return Zdd.UNIT;
+        if (c == -2) return Zdd.EMPTY;
+
+        stats.lookups++;
+        Integer known = zmemo.get(new Key(lc));
+        if (known != null) { stats.hits++; return known; }
+
+        // gather the candidate rows first: the recursion below reuses the next level's arrays
+        long[] cand = colRows[c];
+        int[] rows = new int[16];
+        int k = 0;
+        for (int w = colLo[c]; w < colHi[c]; w++) {
+            long bits = cand[w] & lr[w];
+            while (bits != 0) {
+                if (k == rows.length) rows = Arrays.copyOf(rows, k * 2);
+                rows[k++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        // chain the branches so the first row tried ends up on top: node(r1, lo = node(r2, ...), hi = below r1)
+        int node = Zdd.EMPTY;
+        long[] nextCols = liveColsAt[level + 1], nextRows = liveRowsAt[level + 1];
+        for (int i = k - 1; i >= 0; i--) {
+            choose(rows[i], lc, lr, nextCols, nextRows);
+            node = zdd.make(rowIds[rows[i]], node, zdd(level + 1));
+        }
+        zmemo.put(new Key(lc.clone()), node);
+        if (zmemo.size() > stats.peakEntries) stats.peakEntries = zmemo.size();
+        return node;
+    }
+}
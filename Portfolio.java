@@ -0,0 +1,158 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * Portfolio.java
+ *
+ * Runs several differently-configured DLX searches on the same puzzle in parallel.
+ * Some puzzles hit a bad branching order with the deterministic chooseColumn()/row order
+ * and take far longer than close variants; trying a few orders at once and keeping the
+ * first one to finish hides most of that.
+ *
+ * Every configuration gets its own matrix (DLX is not thread safe) and a seed derived
+ * from the portfolio seed, so any run can be reproduced by passing the same seed again.
+ */
+public class Portfolio {
+
+    /** One solver configuration in the portfolio. */
+    public static class Config {
+        final String name;
+        final int tieBreak;       // DLX.TIE_*
+        final boolean shuffleRows;
+        final boolean restarts;   // restart with a new seed and a doubled node limit when the limit is hit
+        final long seed;
+
+        Config(String name, int tieBreak, boolean shuffleRows, boolean restarts, long seed) {
+            this.name = name;
+            this.tieBreak = tieBreak;
+            this.shuffleRows = shuffleRows;
+            this.restarts = restarts;
+            this.seed = seed;
+        }
+
+        @Override
+        public String toString() { return name + "(seed=" + seed + ")"; }
+    }
+
+    /** Outcome of a portfolio run: the answer plus which configuration produced it. */
+    public static class Result {
+        public final int[] rowIds;              // null if the puzzle has no solution
+        public final ArrayList<DLX.RowDecode> decodes;
+        public final Config winner;
+        public final long nodes;                // nodes visited by the winning configuration (restarts included)
+        public final int restartsUsed;
+        public final int matrixRows;            // the winner's matrix
+        public final long matrixNodes;
+        public final long buildNanos;
+
+        Result(int[] rowIds, ArrayList<DLX.RowDecode> decodes, Config winner, long nodes, int restartsUsed, DLX dlx, long buildNanos) {
+            this.rowIds = rowIds;
+            this.decodes = decodes;
+            this.winner = winner;
+            this.nodes = nodes;
+            this.restartsUsed = restartsUsed;
+            this.matrixRows = dlx.getRowCount();
+            this.matrixNodes = dlx.getNodeCount();
+            this.buildNanos = buildNanos;
+        }
+    }
+
+    private static final long FIRST_RESTART_LIMIT = 1_000; // node limit of the first restart run; doubles every time
+
+    private final long seed;
+    private long nodeLimit = Long.MAX_VALUE; // per configuration, restarts included
+    private boolean twoLevelCages = false;
+    private final ArrayList<Config> configs = new ArrayList<>();
+    private final LinkedHashMap<String, Integer> wins = new LinkedHashMap<>(); // config name -> puzzles won
+
+    /* Default portfolio: the deterministic search, a different tie-break, shuffled rows and randomized restarts. */
+    public Portfolio(long seed) {
+        this.seed = seed;
+        Random r = new Random(seed);
+        configs.add(new Config("deterministic", DLX.TIE_FIRST, false, false, 0));
+        configs.add(new Config("tie-last", DLX.TIE_LAST, false, false, 0));
+        configs.add(new Config("shuffle", DLX.TIE_RANDOM, true, false, r.nextLong()));
+        configs.add(new Config("restarts", DLX.TIE_RANDOM, true, true, r.nextLong()));
+        for (Config c : configs) wins.put(c.name, 0);
+    }
+
+    public long getSeed() { return seed; }
+
+    /* Give up a configuration once it has visited this many search nodes, over all its restarts (<= 0: no limit). */
+    public Portfolio setNodeLimit(long limit) { nodeLimit = (limit <= 0) ? Long.MAX_VALUE : limit; return this; }
+
+    /* Build every configuration's matrix with the two-level cage encoding (see DLX.KillerDLXBuilder). */
+    public Portfolio setTwoLevelCages(boolean b) { twoLevelCages = b; return this; }
+
+    public List<Config> getConfigs() { return Collections.unmodifiableList(configs); }
+
+    /* How many puzzles each configuration has won so far with this portfolio. */
+    public synchronized Map<String, Integer> getWins() { return new LinkedHashMap<>(wins); }
+
+    /*
+     * Solve for the first solution. The first configuration to finish wins and the rest are cancelled.
+     * Returns null if no configuration finished, i.e. every one hit the node limit (or was cancelled).
+     */
+    public Result solveFirst(Puzzle p) throws InterruptedException {
+        int n = configs.size();
+        ExecutorService pool = Executors.newFixedThreadPool(n);
+        ExecutorCompletionService<Result> done = new ExecutorCompletionService<>(pool);
+        DLX[] running = new DLX[n]; // so the losers can be cancelled
+        boolean[] over = new boolean[1]; // set (under the running lock) once the race is decided
+        try {
+            for (int i = 0; i < n; i++) {
+                final int idx = i;
+                done.submit(() -> run(p, configs.get(idx), nodeLimit, twoLevelCages, running, over, idx));
+            }
+            for (int i = 0; i < n; i++) {
+                try {
+                    Result res = done.take().get();
+                    if (res != null) { // null means the configuration was cancelled
+                        synchronized (this) { wins.merge(res.winner.name, 1, Integer::sum); }
+                        return res;
+                    }
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Portfolio configuration failed", e.getCause());
+                }
+            }
+            return null; // every configuration hit the node limit or was cancelled
+        } finally {
+            synchronized (running) {
+                over[0] = true; // a worker that publishes its DLX after this sees the flag instead
+                for (DLX d : running) if (d != null) d.cancel();
+            }
+            pool.shutdownNow();
+        }
+    }
+
+    // run one configuration to completion (or until cancelled or out of nodes); returns null when it didn't finish
+    private static Result run(Puzzle p, Config cfg, long nodeLimit, boolean twoLevelCages, DLX[] running, boolean[] over, int idx) {
+        Random seeds = new Random(cfg.seed);
+        long limit = cfg.restarts ? FIRST_RESTART_LIMIT : Long.MAX_VALUE;
+        long spent = 0;
+        int restarts = 0;
+
+        long t0 = System.nanoTime();
+        DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p, twoLevelCages);
+        DLX dlx = builder.build();
+        long buildNanos = System.nanoTime() - t0;
+        synchronized (running) {
+            if (over[0]) return null; // lost the race before we even started
+            running[idx] = dlx;       // from here on the cancel loop in solveFirst reaches it
+        }
+        dlx.setTieBreak(cfg.tieBreak);
+        dlx.setShuffleRows(cfg.shuffleRows);
+
+        while (true) {
+            dlx.setSeed(seeds.nextLong());
+            dlx.setNodeLimit(Math.min(limit, nodeLimit - spent));
+            int[] rows = dlx.solveFirst();
+            spent += Math.min(dlx.getNodes(), nodeLimit - spent);
+            if (!dlx.wasAborted()) return new Result(rows, builder.getRowDecodes(), cfg, spent, restarts, dlx, buildNanos);
+            if (!cfg.restarts || dlx.isCancelled()) return null; // cancelled by a faster configuration, or out of nodes
+            if (spent >= nodeLimit) return null;                 // used up its share of the node limit
+            limit = (limit > Long.MAX_VALUE / 2) ? Long.MAX_VALUE : limit * 2;
+            restarts++;
+        }
+    }
+}
@@ -12,22 +12,59 @@ public class Puzzle {
     // all cages in this puzzle
     private final ArrayList<Cage> cages = new ArrayList<>();
 
-    /* Add a cage and mark its cells. Throws if a cell is already in another cage. */
+    // which cage each cell (0..80, row-major) belongs to, null if none; lets editors find and check cages in O(1)
+    private final Cage[] cageAt = new Cage[N * N];
+
+    /* Add a cage and mark its cells. Throws (and changes nothing) if a cell is already in a cage or repeated. */
     public void addCage(Cage c) {
-        // mark cells; cell coords are 1..9 in Cell class
-        for (Cell cell : c.getCells()) {
+        // check every cell first so a rejected cage leaves no marks behind; cell coords are 1..9 in Cell class
+        ArrayList<Cell> cells = c.getCells();
+        for (int i = 0; i < cells.size(); i++) {
+            Cell cell = cells.get(i);
             int r0 = cell.getRow() - 1; // conversion from 1-9 to 0-8.
             int c0 = cell.getCol() - 1;
+            if (r0 < 0 || r0 >= N || c0 < 0 || c0 >= N) {
+                throw new IllegalArgumentException("Cell (" + cell.getRow() + "," + cell.getCol() + ") is off the grid.");
+            }
             if (inCage[r0][c0]) { // if the inCage is already marked true for a cell we are trying to mark, give exception, this is illegal.
                 throw new IllegalArgumentException(
                     "Cell (" + cell.getRow() + "," + cell.getCol() + ") is already in a cage."
                 );
             }
-            inCage[r0][c0] = true;
+            for (int j = 0; j < i; j++) {
+                if (cell.equals(cells.get(j))) {
+                    throw new IllegalArgumentException("Cell (" + cell.getRow() + "," + cell.getCol() + ") is listed twice.");
+                }
+            }
+        }
+        for (Cell cell : cells) {
+            inCage[cell.getRow() - 1][cell.getCol() - 1] = true;
+            cageAt[(cell.getRow() - 1) * N + (cell.getCol() - 1)] = c;
         }
         cages.add(c);
     }
 
+    /* Remove a cage that was added earlier and unmark its cells. Returns false if it isn't in this puzzle. */
+    public boolean removeCage(Cage c) {
+        if (!cages.remove(c)) return false; // identity: Cage doesn't override equals
+        for (Cell cell : c.getCells()) {
+            inCage[cell.getRow() - 1][cell.getCol() - 1] = false;
+            cageAt[(cell.getRow() - 1) * N + (cell.getCol() - 1)] = null;
+        }
+        return true;
+    }
+
+    /* The cage containing (row,col), or null. row/col are 1..9. */
+    public Cage getCageAt(int row1to9, int col1to9) {
+        if (row1to9 < 1 || row1to9 > 9 || col1to9 < 1 || col1to9 > 9)
+            throw new IllegalArgumentException("Row/col must be 1..9.");
+        return cageAt[(row1to9 - 1) * N + (col1to9 - 1)];
+    }
+
+    public int getCageCount() {
+        return cages.size();
+    }
+
     /* Set a clue (prefilled digit). row/col are 1..9, d is 1..9, 0 clears. */
     public void setGiven(int rownum, int colnum, int d) {
         if (rownum < 1 || rownum > 9 || colnum < 1 || colnum > 9)
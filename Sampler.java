@@ -0,0 +1,180 @@
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Sampler.java
+ *
+ * Draws K distinct solutions spread over the solution space, for puzzles with far too many solutions to
+ * list. Listing the first K from search() gives K near-identical grids (they share everything but the last
+ * few choices); a sample should look like K grids picked at random.
+ *
+ * Two methods:
+ *   DESCENT   walk down the DLX search tree with select(), choosing each branch with probability proportional
+ *             to a Knuth estimate of how many solutions lie below it (random probes, see DLX.estimate).
+ *             With exact counts this would be a perfectly uniform sample; with estimates it is roughly uniform.
+ *   RESTARTS  solve again and again with random tie-breaking, shuffled rows and a fresh seed each time
+ *             (like Portfolio's restarts). Cheaper per sample, but biased towards solutions that are easy to reach.
+ *
+ * Every thread has its own matrix and random stream; duplicates are dropped by comparing packed grids.
+ * Sampling stops at K distinct solutions or when the time budget runs out, whichever comes first.
+ */
+public class Sampler {
+
+    public static final int DESCENT = 0;
+    public static final int RESTARTS = 1;
+
+    private static final int PROBES = 8;                  // probes per branch estimate in DESCENT
+    private static final long FIRST_RESTART_LIMIT = 1_000; // node limit of a RESTARTS run; doubles when it is hit
+
+    /** What a sampling run produced. */
+    public static class Result {
+        public final ArrayList<int[]> grids = new ArrayList<>(); // distinct solutions, int[81] row-major, in the order found
+        public long attempts;    // descents or restarts tried
+        public long duplicates;  // attempts that found a solution already in the sample
+        public long deadEnds;    // attempts that found nothing (DESCENT: a branch with no way on; RESTARTS: node limit)
+        public long nanos;
+        public boolean exhausted; // the puzzle has no solution at all
+
+        /* True if the full K were found. */
+        public boolean complete(int k) { return grids.size() >= k; }
+    }
+
+    private final long seed;
+    private int method = DESCENT;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public Sampler(long seed) { this.seed = seed; }
+
+    public Sampler setMethod(int m) {
+        if (m != DESCENT && m != RESTARTS) throw new IllegalArgumentException("Unknown sampling method " + m);
+        method = m;
+        return this;
+    }
+
+    public Sampler setThreads(int n) { threads = Math.max(1, n); return this; }
+
+    /* Up to k distinct solutions of p found within budgetMillis. */
+    public Result sample(Puzzle p, int k, long budgetMillis) throws InterruptedException {
+        Result res = new Result();
+        long t0 = System.nanoTime();
+        long deadline = t0 + budgetMillis * 1_000_000L;
+        Set<ByteBuffer> seen = ConcurrentHashMap.newKeySet();
+        AtomicLong attempts = new AtomicLong(), duplicates = new AtomicLong(), deadEnds = new AtomicLong();
+
+        // a descent can't tell "no solutions" from bad luck, so it would spin until the deadline: check first
+        if (method == DESCENT && !hasSolution(p, deadline)) {
+            res.exhausted = true;
+            res.nanos = System.nanoTime() - t0;
+            return res;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final Random rnd = new Random(seed + 0x9E3779B97F4A7C15L * (t + 1)); // one stream per thread
+            running.add(pool.submit(() -> {
+                DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p);
+                builder.setParallel(false); // the threads already keep the cores busy
+                DLX dlx = builder.build();
+                GridDecoder decoder = new GridDecoder(builder.getRowDecodes());
+                if (method == RESTARTS) {
+                    dlx.setTieBreak(DLX.TIE_RANDOM);
+                    dlx.setShuffleRows(true);
+                }
+                int[] grid = new int[81];
+                long limit = FIRST_RESTART_LIMIT;
+                while (System.nanoTime() < deadline) {
+                    synchronized (res) {
+                        if (res.grids.size() >= k || res.exhausted) return;
+                    }
+                    attempts.incrementAndGet();
+                    int[] rowIds;
+                    if (method == DESCENT) {
+                        rowIds = descend(dlx, rnd, deadline) ? dlx.getSelected() : null;
+                        dlx.unselectAll();
+                    } else {
+                        dlx.setSeed(rnd.nextLong());
+                        dlx.setNodeLimit(limit);
+                        rowIds = dlx.solveFirst();
+                        if (rowIds == null && !dlx.wasAborted()) { // searched everything: no solutions
+                            synchronized (res) { res.exhausted = true; }
+                            return;
+                        }
+                        if (dlx.wasAborted()) limit *= 2;
+                    }
+                    if (rowIds == null) { deadEnds.incrementAndGet(); continue; }
+
+                    decoder.decode(rowIds, rowIds.length, grid);
+                    byte[] packed = new byte[SolutionStore.BYTES_PER_GRID];
+                    SolutionStore.pack(grid, packed, 0);
+                    if (!seen.add(ByteBuffer.wrap(packed))) { duplicates.incrementAndGet(); continue; }
+                    synchronized (res) {
+                        if (res.grids.size() < k) res.grids.add(grid.clone());
+                    }
+                }
+            }));
+        }
+        pool.shutdown();
+        try {
+            for (Future<?> f : running) f.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Sampling thread failed", e.getCause());
+        }
+        res.attempts = attempts.get();
+        res.duplicates = duplicates.get();
+        res.deadEnds = deadEnds.get();
+        res.nanos = System.nanoTime() - t0;
+        return res;
+    }
+
+    /*
+     * Deterministic first-solution search, restarted with a doubling node limit so it gives up at the deadline.
+     * False only if the whole tree was searched without a solution; running out of time counts as "maybe".
+     */
+    private static boolean hasSolution(Puzzle p, long deadline) {
+        DLX dlx = new DLX.KillerDLXBuilder(p).build();
+        for (long limit = FIRST_RESTART_LIMIT; ; limit = (limit > Long.MAX_VALUE / 2) ? Long.MAX_VALUE : limit * 2) {
+            dlx.setNodeLimit(limit);
+            if (dlx.solveFirst() != null) return true;
+            if (!dlx.wasAborted()) return false;
+            if (System.nanoTime() >= deadline) return true;
+        }
+    }
+
+    /*
+     * One random descent from the root: at every level select a branch with probability proportional to its
+     * estimated solution count. Returns true with the solution left selected, false on a dead end (or when
+     * the deadline passes); the caller unselects either way.
+     */
+    private static boolean descend(DLX dlx, Random rnd, long deadline) {
+        double[] weight = new double[8];
+        while (!dlx.isSolved()) {
+            int[] rows = dlx.branchRows();
+            if (rows.length == 0 || System.nanoTime() >= deadline) return false;
+            int pick = 0;
+            if (rows.length > 1) {
+                if (weight.length < rows.length) weight = new double[rows.length];
+                double total = 0;
+                for (int i = 0; i < rows.length; i++) {
+                    dlx.select(rows[i]);
+                    weight[i] = dlx.estimate(PROBES, rnd).solutions;
+                    dlx.unselect();
+                    total += weight[i];
+                }
+                if (total == 0) {
+                    pick = rnd.nextInt(rows.length); // no probe got through anywhere: guess
+                } else {
+                    double x = rnd.nextDouble() * total;
+                    for (pick = 0; pick < rows.length - 1; pick++) {
+                        x -= weight[pick];
+                        if (x < 0) break;
+                    }
+                }
+            }
+            dlx.select(rows[pick]);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * SolutionStats.java
+ *
+ * Per-cell digit statistics over the full solution space of a puzzle: how often each digit shows up in
+ * each cell, and which cells hold the same digit in every solution. Solutions are streamed through
+ * DLX.enumerate() and folded into the counters on the spot, so no grid is ever stored and puzzles with
+ * millions of solutions are fine.
+ *
+ * collect() splits the search tree into prefixes (DLX.splitPrefixes) and lets a few worker threads
+ * enumerate them, each with its own matrix and its own counters, which are merged at the end.
+ */
+public class SolutionStats {
+    private final long[] counts = new long[81 * 9]; // counts[cell0 * 9 + d - 1]
+    private long solutions = 0;
+
+    public long getSolutionCount() { return solutions; }
+
+    /* Number of solutions with digit d at (r,c); r, c, d are 1..9. */
+    public long getCount(int r, int c, int d) {
+        return counts[Helpers.cellIndex0(r, c) * 9 + d - 1];
+    }
+
+    /* The digit (r,c) has in every solution, or 0 if it varies (or there are no solutions). */
+    public int getFixedDigit(int r, int c) {
+        if (solutions == 0) return 0;
+        for (int d = 1; d <= 9; d++)
+            if (getCount(r, c, d) == solutions) return d;
+        return 0;
+    }
+
+    public int getFixedCellCount() {
+        int n = 0;
+        for (int r = 1; r <= 9; r++)
+            for (int c = 1; c <= 9; c++)
+                if (getFixedDigit(r, c) != 0) n++;
+        return n;
+    }
+
+    void merge(SolutionStats other) {
+        solutions += other.solutions;
+        for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+    }
+
+    /* Walk every solution of p on `threads` worker threads. */
+    public static SolutionStats collect(Puzzle p, int threads) throws InterruptedException {
+        DLX.KillerDLXBuilder splitter = new DLX.KillerDLXBuilder(p);
+        ArrayList<int[]> prefixes = splitter.build().splitPrefixes(threads * 8);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger next = new AtomicInteger();
+        ArrayList<Future<SolutionStats>> parts = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            parts.add(pool.submit(() -> {
+                DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p);
+                builder.setParallel(false); // the workers already keep the cores busy
+                DLX dlx = builder.build();
+                GridDecoder decoder = new GridDecoder(builder.getRowDecodes());
+                SolutionStats mine = new SolutionStats();
+                int i;
+                while ((i = next.getAndIncrement()) < prefixes.size()) {
+                    for (int rowId : prefixes.get(i)) dlx.select(rowId);
+                    mine.solutions += dlx.enumerate((rowIds, count) -> decoder.addCounts(rowIds, count, mine.counts));
+                    dlx.unselectAll();
+                }
+                return mine;
+            }));
+        }
+        pool.shutdown();
+
+        SolutionStats total = new SolutionStats();
+        try {
+            for (Future<SolutionStats> f : parts) total.merge(f.get());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Statistics worker failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return total;
+    }
+
+    /* Print the fixed cells as a grid, then the digit frequencies of every cell that isn't fixed. */
+    public void print() {
+        System.out.println("Solutions: " + solutions + ", cells fixed across all of them: " + getFixedCellCount());
+        System.out.print("   ");
+        for (int c = 0; c < 9; c++) System.out.print(" " + (char) ('A' + c) + " ");
+        System.out.println();
+        for (int r = 1; r <= 9; r++) {
+            System.out.print(r + "  ");
+            for (int c = 1; c <= 9; c++) {
+                int d = getFixedDigit(r, c);
+                System.out.print(d == 0 ? " . " : (" " + d + " "));
+            }
+            System.out.println();
+        }
+        if (solutions == 0) return;
+        System.out.println("\nDigit frequencies of the cells that vary (digit:share of solutions):");
+        for (int r = 1; r <= 9; r++) {
+            for (int c = 1; c <= 9; c++) {
+                if (getFixedDigit(r, c) != 0) continue;
+                StringBuilder sb = new StringBuilder("  " + Helpers.label(r, c) + ":");
+                for (int d = 1; d <= 9; d++) {
+                    long n = getCount(r, c, d);
+                    if (n > 0) sb.append(String.format(" %d:%.1f%%", d, 100.0 * n / solutions));
+                }
+                System.out.println(sb);
+            }
+        }
+    }
+}
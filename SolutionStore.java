@@ -0,0 +1,166 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * SolutionStore.java
+ *
+ * Compact, append-only list of solved grids, so "all solutions" can mean millions of them without a cap.
+ *
+ * A grid is packed 4 bits per cell (digits 0..9 fit in a nibble): 81 cells -> 41 bytes, against ~400 bytes
+ * for an int[81] and far more for an int[9][9] plus the DLX row ids. Packed grids go into one byte buffer;
+ * once that buffer reaches the memory budget it is appended to a temp file and reused, so the heap used
+ * is bounded by the budget however many grids are added. Grids are read back in the order they were added
+ * with a Reader, one reused int[81] at a time.
+ *
+ *   try (SolutionStore store = new SolutionStore(64 << 20)) {
+ *       store.add(grid);                                 // any number of times
+ *       SolutionStore.Reader r = store.reader();
+ *       int[] g = new int[81];
+ *       while (r.next(g)) use(g);
+ *   }
+ *
+ * A reader sees the grids that were added before it was made; don't add more while one is in use.
+ * close() deletes the temp file (it is also deleted when the JVM exits).
+ */
+public class SolutionStore implements AutoCloseable {
+    public static final int CELLS = 81;
+    public static final int BYTES_PER_GRID = (CELLS + 1) / 2; // 41
+
+    private final int budgetGrids;   // grids kept in memory before the buffer is spilled
+    private byte[] buf = new byte[BYTES_PER_GRID * 64];
+    private int inMemory = 0;        // grids in buf
+    private long spilled = 0;        // grids in the temp file
+    private Path file = null;
+    private OutputStream out = null;
+
+    /* memoryBudget: bytes of packed grids to keep on the heap before spilling to disk (at least one grid). */
+    public SolutionStore(long memoryBudget) {
+        this.budgetGrids = (int) Math.max(1, Math.min(memoryBudget / BYTES_PER_GRID, Integer.MAX_VALUE / BYTES_PER_GRID));
+    }
+
+    /* Append one grid (81 digits 0..9, row-major). The array is not kept. */
+    public void add(int[] grid) {
+        if (inMemory == budgetGrids) spill();
+        int need = (inMemory + 1) * BYTES_PER_GRID;
+        if (need > buf.length) {
+            buf = Arrays.copyOf(buf, (int) Math.min(Math.max(need, 2L * buf.length), (long) budgetGrids * BYTES_PER_GRID));
+        }
+        pack(grid, buf, inMemory * BYTES_PER_GRID);
+        inMemory++;
+    }
+
+    /* Pack grid[0..81) into out[at..at+41), two cells per byte. */
+    public static void pack(int[] grid, byte[] out, int at) {
+        for (int i = 0; i < CELLS; i += 2) {
+            int hi = grid[i];
+            int lo = (i + 1 < CELLS) ? grid[i + 1] : 0;
+            out[at++] = (byte) ((hi << 4) | lo);
+        }
+    }
+
+    /* Inverse of pack(). */
+    public static void unpack(byte[] in, int at, int[] grid) {
+        for (int i = 0; i < CELLS; i += 2) {
+            int b = in[at++] & 0xFF;
+            grid[i] = b >>> 4;
+            if (i + 1 < CELLS) grid[i + 1] = b & 0xF;
+        }
+    }
+
+    public long size() { return spilled + inMemory; }
+
+    /* Grids written to the temp file so far (0 if everything still fits in memory). */
+    public long getSpilled() { return spilled; }
+
+    // append the in-memory grids to the temp file and empty the buffer
+    private void spill() {
+        try {
+            if (out == null) {
+                file = Files.createTempFile("solutions-", ".grids");
+                file.toFile().deleteOnExit();
+                out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+            }
+            out.write(buf, 0, inMemory * BYTES_PER_GRID);
+            spilled += inMemory;
+            inMemory = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't spill solutions to disk", e);
+        }
+    }
+
+    /* Sequential reader over every grid added so far: first the spilled ones, then the ones still in memory. */
+    public Reader reader() {
+        try {
+            if (out != null) out.flush();
+            return new Reader(spilled, inMemory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public class Reader implements AutoCloseable {
+        private final long fromFile;
+        private final int fromMemory;
+        private long read = 0;
+        private InputStream in = null;
+        private final byte[] one = new byte[BYTES_PER_GRID];
+
+        private Reader(long fromFile, int fromMemory) throws IOException {
+            this.fromFile = fromFile;
+            this.fromMemory = fromMemory;
+            if (fromFile > 0) in = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+        }
+
+        /* Unpack the next grid into grid[0..81); false when there are no more. */
+        public boolean next(int[] grid) {
+            if (read >= fromFile + fromMemory) { close(); return false; }
+            byte[] src;
+            int at;
+            if (read < fromFile) {
+                try {
+                    int n = 0;
+                    while (n < BYTES_PER_GRID) {
+                        int k = in.read(one, n, BYTES_PER_GRID - n);
+                        if (k < 0) throw new EOFException("Solution file ended early");
+                        n += k;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                src = one;
+                at = 0;
+            } else {
+                src = buf;
+                at = (int) (read - fromFile) * BYTES_PER_GRID;
+            }
+            unpack(src, at, grid);
+            read++;
+            return true;
+        }
+
+        @Override
+        public void close() {
+            if (in == null) return;
+            try { in.close(); } catch (IOException e) { /* read-only; nothing to lose */ }
+            in = null;
+        }
+    }
+
+    /* Drop everything and delete the temp file. */
+    @Override
+    public void close() {
+        try {
+            if (out != null) out.close();
+            if (file != null) Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            out = null;
+            file = null;
+            buf = new byte[0];
+            inMemory = 0;
+            spilled = 0;
+        }
+    }
+}
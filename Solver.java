@@ -0,0 +1,233 @@
+import java.util.*;
+
+/*
+ * Solver.java
+ *
+ * Embeddable front door to the solver: everything Main used to do between "here is a Puzzle" and "here
+ * are the digits" (build the matrix, run the search, decode row ids) without any console I/O.
+ *
+ *   Solver.Result r = Solver.solve(puzzle, new Solver.Options().mode(Solver.FIRST));
+ *   if (r.solved()) use(r.grid);   // int[81], row-major: grid[(row-1)*9 + (col-1)]
+ *
+ * A puzzle can also be given in the compact text form of Helpers.parsePuzzle, e.g. "A1A2B1 12; C1 5; ...".
+ * Decoding goes through GridDecoder into a reused int[81], so no objects are made per solution;
+ * solveEach() hands that array straight to the caller.
+ */
+public class Solver {
+
+    // what to solve for
+    public static final int FIRST = 0;  // any one solution
+    public static final int UNIQUE = 1; // one solution, plus whether it is the only one (stops at the second)
+    public static final int COUNT = 2;  // number of solutions, no grids
+    public static final int ALL = 3;    // every solution as a grid (up to maxSolutions), kept in a SolutionStore
+
+    // exact-cover engine to search with
+    public static final int DANCING_LINKS = 0; // DLX
+    public static final int BITSET = 1;        // BitsetDLX
+    public static final int OFF_HEAP = 2;      // OffHeapDLX (optional, Java 22+): matrix outside the Java heap, freed when the solve ends
+
+    /** Solve options; setters return this so they can be chained. */
+    public static class Options {
+        int mode = FIRST;
+        long maxSolutions = Long.MAX_VALUE; // cap for COUNT and ALL
+        long nodeLimit = Long.MAX_VALUE;    // give up after this many search nodes (result is then incomplete)
+        boolean twoLevelCages = false;      // see DLX.KillerDLXBuilder
+        int engine = DANCING_LINKS;
+        boolean portfolio = false;          // FIRST only: race randomized configurations (see Portfolio); DANCING_LINKS only
+        long seed = 0;                      // portfolio seed
+        long memoryBudget = 64L << 20;      // ALL: bytes of packed grids kept on the heap before spilling to disk
+        long maxEstimatedNodes = Long.MAX_VALUE; // UNIQUE/COUNT/ALL: don't start if the estimated search is bigger
+        int estimateProbes = 256;
+
+        public Options mode(int m) {
+            if (m < FIRST || m > ALL) throw new IllegalArgumentException("Unknown mode " + m);
+            mode = m;
+            return this;
+        }
+        public Options maxSolutions(long k) { maxSolutions = (k <= 0) ? Long.MAX_VALUE : k; return this; }
+        public Options nodeLimit(long n) { nodeLimit = (n <= 0) ? Long.MAX_VALUE : n; return this; }
+        public Options twoLevelCages(boolean b) { twoLevelCages = b; return this; }
+        public Options engine(int e) {
+            if (e < DANCING_LINKS || e > OFF_HEAP) throw new IllegalArgumentException("Unknown engine " + e);
+            engine = e;
+            return this;
+        }
+        /* FIRST: race several DLX configurations (see Portfolio); nodeLimit applies to each, twoLevelCages to all. */
+        public Options portfolio(long seed) { portfolio = true; this.seed = seed; return this; }
+        public Options memoryBudget(long bytes) { memoryBudget = bytes; return this; }
+        public Options maxEstimatedNodes(long n) { maxEstimatedNodes = (n <= 0) ? Long.MAX_VALUE : n; return this; }
+        public Options estimateProbes(int n) { estimateProbes = Math.max(1, n); return this; }
+    }
+
+    /** What a solve found, plus timing and search statistics. */
+    public static class Result {
+        public int[] grid;                                 // first solution (int[81]), or null if none was found
+        public SolutionStore solutions;                    // ALL: every solution found (close it when done)
+        public long solutionCount;                         // solutions found (for UNIQUE at most 2)
+        public boolean complete;                           // false if the node limit or maxSolutions stopped the search early
+        public long nodes;                                 // search nodes visited
+        public int matrixRows;
+        public long matrixNodes;
+        public long buildNanos, solveNanos;
+        public String portfolioWinner;                     // winning configuration when the portfolio was used
+        public DLX.Estimate estimate;                      // when maxEstimatedNodes was set: the size estimate it was checked against
+        public boolean rejected;                           // the estimate was over maxEstimatedNodes, so nothing was searched
+
+        public boolean solved() { return grid != null; }
+
+        /* UNIQUE (or a complete COUNT/ALL): exactly one solution exists. */
+        public boolean isUnique() { return complete && solutionCount == 1; }
+    }
+
+    /** Receives every solution of solveEach(); grid is reused for the next solution, so copy it if you keep it. */
+    public interface GridListener {
+        void onGrid(int[] grid);
+    }
+
+    public static Result solve(String compactPuzzle, Options o) throws InterruptedException {
+        return solve(Helpers.parsePuzzle(compactPuzzle), o);
+    }
+
+    public static Result solve(Puzzle p, Options o) throws InterruptedException {
+        if (o.portfolio && o.mode == FIRST) return solvePortfolio(p, o);
+
+        Result res = new Result();
+        long t0 = System.nanoTime();
+        DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p, o.twoLevelCages);
+        ExactCover dlx = build(builder, o);
+        try {
+            GridDecoder decoder = new GridDecoder(builder.getRowDecodes());
+            res.buildNanos = System.nanoTime() - t0;
+            res.matrixRows = dlx.getRowCount();
+            res.matrixNodes = dlx.getNodeCount();
+
+            if (o.mode != FIRST && tooBig(res, builder, dlx, o)) return res; // FIRST usually stops far short of the full tree
+
+            long cap = (o.mode == FIRST) ? 1 : (o.mode == UNIQUE) ? 2 : o.maxSolutions;
+            dlx.setMaxSolutions(cap);
+            dlx.setNodeLimit(o.nodeLimit);
+
+            int[] grid = new int[81];
+            if (o.mode == ALL) res.solutions = new SolutionStore(o.memoryBudget);
+            long t1 = System.nanoTime();
+            res.solutionCount = dlx.enumerate((rowIds, n) -> {
+                if (res.grid != null && o.mode != ALL) return; // COUNT/UNIQUE only keep the first grid
+                decoder.decode(rowIds, n, grid);
+                if (res.grid == null) res.grid = grid.clone();
+                if (o.mode == ALL) res.solutions.add(grid);
+            });
+            res.solveNanos = System.nanoTime() - t1;
+            res.nodes = dlx.getNodes();
+            res.complete = !dlx.wasAborted() && (res.solutionCount < cap || o.mode == FIRST);
+            return res;
+        } finally {
+            release(dlx); // OFF_HEAP: free the matrix now, not at some later GC
+        }
+    }
+
+    /*
+     * Stream every solution (up to maxSolutions) to l through one reused int[81]; nothing is allocated per
+     * solution. The returned Result has the counts and timings but no grids.
+     */
+    public static Result solveEach(Puzzle p, Options o, GridListener l) {
+        Result res = new Result();
+        long t0 = System.nanoTime();
+        DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p, o.twoLevelCages);
+        ExactCover dlx = build(builder, o);
+        try {
+            GridDecoder decoder = new GridDecoder(builder.getRowDecodes());
+            res.buildNanos = System.nanoTime() - t0;
+            res.matrixRows = dlx.getRowCount();
+            res.matrixNodes = dlx.getNodeCount();
+
+            if (tooBig(res, builder, dlx, o)) return res;
+
+            dlx.setMaxSolutions(o.maxSolutions);
+            dlx.setNodeLimit(o.nodeLimit);
+            int[] grid = new int[81];
+            long t1 = System.nanoTime();
+            res.solutionCount = dlx.enumerate((rowIds, n) -> {
+                decoder.decode(rowIds, n, grid);
+                l.onGrid(grid);
+            });
+            res.solveNanos = System.nanoTime() - t1;
+            res.nodes = dlx.getNodes();
+            res.complete = !dlx.wasAborted() && res.solutionCount < o.maxSolutions;
+            return res;
+        } finally {
+            release(dlx); // OFF_HEAP: free the matrix now, not at some later GC
+        }
+    }
+
+    // size check before a long enumeration: with maxEstimatedNodes set, estimate first and mark res rejected if over
+    private static boolean tooBig(Result res, DLX.KillerDLXBuilder builder, ExactCover dlx, Options o) {
+        if (o.maxEstimatedNodes == Long.MAX_VALUE) return false;
+        res.estimate = estimate(builder, dlx, o);
+        res.rejected = res.estimate.nodes > o.maxEstimatedNodes;
+        return res.rejected;
+    }
+
+    /*
+     * Knuth estimate of the full search for p (nodes and solutions, with their spread) without searching it;
+     * takes milliseconds. Use it to decide whether to run a count inline, hand it to Batch split/work, or refuse.
+     */
+    public static DLX.Estimate estimate(Puzzle p, Options o) {
+        DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p, o.twoLevelCages);
+        return estimate(builder, builder.build(), o);
+    }
+
+    // the estimator walks the tree with select(), which only DLX has; other engines get a DLX built for it
+    private static DLX.Estimate estimate(DLX.KillerDLXBuilder builder, ExactCover engine, Options o) {
+        DLX dlx = (engine instanceof DLX) ? (DLX) engine : builder.build();
+        return dlx.estimate(o.estimateProbes, new Random(o.seed));
+    }
+
+    private static ExactCover build(DLX.KillerDLXBuilder builder, Options o) {
+        if (o.engine == BITSET) return builder.buildInto(BitsetDLX.FACTORY);
+        if (o.engine == OFF_HEAP) return builder.buildInto(offHeapFactory());
+        return builder.build();
+    }
+
+    /*
+     * OffHeapDLX.FACTORY, looked up by name. OffHeapDLX needs java.lang.foreign (Java 22) and lives in offheap/,
+     * which is compiled separately, so the rest of the tree builds and runs on older JDKs without it.
+     */
+    static ExactCover.Factory<?> offHeapFactory() {
+        try {
+            return (ExactCover.Factory<?>) Class.forName("OffHeapDLX").getField("FACTORY").get(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("The OFF_HEAP engine needs OffHeapDLX, compiled from offheap/ on Java 22 or newer.", e);
+        }
+    }
+
+    // free an engine's native memory (OFF_HEAP) as soon as the solve is over
+    static void release(ExactCover dlx) {
+        if (!(dlx instanceof AutoCloseable)) return;
+        try {
+            ((AutoCloseable) dlx).close();
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not release the exact-cover engine.", e);
+        }
+    }
+
+    private static Result solvePortfolio(Puzzle p, Options o) throws InterruptedException {
+        if (o.engine != DANCING_LINKS) throw new IllegalArgumentException("The portfolio only runs the DANCING_LINKS engine, not " + o.engine);
+        Result res = new Result();
+        long t0 = System.nanoTime();
+        Portfolio.Result pr = new Portfolio(o.seed).setNodeLimit(o.nodeLimit).setTwoLevelCages(o.twoLevelCages).solveFirst(p);
+        res.solveNanos = System.nanoTime() - t0; // the whole race, including every configuration's build
+        if (pr == null) return res;              // every configuration hit the node limit: incomplete, nothing found
+        res.buildNanos = pr.buildNanos;          // the winner's build, which overlaps solveNanos
+        res.matrixRows = pr.matrixRows;
+        res.matrixNodes = pr.matrixNodes;
+        res.nodes = pr.nodes;
+        res.portfolioWinner = pr.winner.toString();
+        res.complete = true;
+        if (pr.rowIds != null) {
+            res.grid = new int[81];
+            new GridDecoder(pr.decodes).decode(pr.rowIds, pr.rowIds.length, res.grid);
+            res.solutionCount = 1;
+        }
+        return res;
+    }
+}
@@ -0,0 +1,333 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * WorkUnits.java
+ *
+ * Splits one big enumeration into independent work units that any number of worker processes can pick
+ * up, on this machine or on other nodes over a shared filesystem.
+ *
+ * A unit is a prefix of row choices below chooseColumn() (see DLX.select). Every solution extends exactly
+ * one unit, so counting each unit and adding the counts up gives the exact total.
+ *
+ * Layout of a job directory:
+ *   puzzle.txt              the puzzle (Helpers.parsePuzzle format); every worker rebuilds the matrix from it
+ *   units.txt               number of units, so merge knows what to expect
+ *   unit-00012.unit         a unit waiting for a worker: its prefix of row ids and its estimated search nodes
+ *   unit-00012.claimed-<w>  the same file after worker <w> claimed it (claiming is an atomic rename)
+ *   unit-00012.result       written by the worker when done: solution and node counts
+ *   unit-00012.solutions    only with --solutions: one 81-digit line per solution
+ *
+ * units.txt, every .unit and every .result carry a "puzzle <hash>" line (a hash of puzzle.txt). Row ids only
+ * mean something for the matrix they were cut from, so work and merge refuse files from another puzzle, and
+ * split refuses a directory that already holds a job unless told to overwrite it.
+ */
+public class WorkUnits {
+
+    /** One piece of the search tree. */
+    static class Unit {
+        final int[] prefix;    // row ids to select()
+        final double estimate; // estimated search nodes below the prefix
+        Unit(int[] prefix, double estimate) { this.prefix = prefix; this.estimate = estimate; }
+    }
+
+    private static final int PROBES = 64; // random probes per unit estimate
+    private static final long SEED = 1;   // fixed, so the same puzzle always splits the same way
+
+    /*
+     * Cut the search tree of dlx into about `units` pieces of roughly equal estimated size: keep splitting the
+     * unit with the biggest estimate into its branches until there are enough. Branches that die at once are
+     * dropped; units that are already solutions can't be split.
+     */
+    static ArrayList<Unit> partition(DLX dlx, int units) {
+        Random rnd = new Random(SEED);
+        PriorityQueue<Unit> open = new PriorityQueue<>((a, b) -> Double.compare(b.estimate, a.estimate));
+        ArrayList<Unit> leaves = new ArrayList<>();
+        open.add(new Unit(new int[0], estimateNodes(dlx, rnd)));
+        while (!open.isEmpty() && open.size() + leaves.size() < units) {
+            Unit u = open.poll();
+            for (int id : u.prefix) dlx.select(id);
+            if (dlx.isSolved()) {
+                leaves.add(u);
+            } else {
+                for (int id : dlx.branchRows()) {
+                    dlx.select(id);
+                    int[] next = Arrays.copyOf(u.prefix, u.prefix.length + 1);
+                    next[u.prefix.length] = id;
+                    if (dlx.isSolved() || dlx.branchRows().length > 0) open.add(new Unit(next, estimateNodes(dlx, rnd)));
+                    dlx.unselect();
+                }
+            }
+            for (int i = 0; i < u.prefix.length; i++) dlx.unselect();
+        }
+        ArrayList<Unit> out = new ArrayList<>(leaves);
+        out.addAll(open);
+        // biggest first: workers claim units in file order, so the long ones start early and the small ones fill the gaps
+        out.sort((a, b) -> a.estimate != b.estimate ? Double.compare(b.estimate, a.estimate) : Arrays.compare(a.prefix, b.prefix));
+        return out;
+    }
+
+    // estimated search nodes below the current selection (Knuth's estimator, see DLX.estimate)
+    static double estimateNodes(DLX dlx, Random rnd) {
+        return dlx.estimate(PROBES, rnd).nodes;
+    }
+
+    private static final double NODES_PER_UNIT = 1e8; // ~30 s of counting on one core
+
+    /* Units to split into so each takes about NODES_PER_UNIT search nodes (at least `threads`, at most 100000). */
+    public static int suggestUnits(DLX.Estimate e, int threads) {
+        double units = Math.ceil(e.nodesHigh() / NODES_PER_UNIT);
+        return (int) Math.max(threads, Math.min(100_000, units));
+    }
+
+    // ---- split ----
+
+    /*
+     * Create the job directory for puzzleFile with about `units` units. A directory that already holds a job
+     * (units.txt or any unit-* file) is refused, unless `overwrite` is set, in which case that job is deleted first.
+     */
+    public static int split(String puzzleFile, String dir, int units, boolean overwrite) throws IOException {
+        Path d = Paths.get(dir);
+        Files.createDirectories(d);
+        ArrayList<Path> old = jobFiles(d);
+        if (!old.isEmpty() && !overwrite)
+            throw new FileAlreadyExistsException(dir, null, "already holds a job (" + old.size() + " file(s)); use a new directory or overwrite it");
+        for (Path f : old) Files.delete(f);
+
+        String text = new String(Files.readAllBytes(Paths.get(puzzleFile)), "UTF-8");
+        Puzzle p = Helpers.parsePuzzle(text);
+        String hash = puzzleHash(text);
+
+        ArrayList<Unit> parts = partition(new DLX.KillerDLXBuilder(p).build(), units);
+        Files.write(d.resolve("puzzle.txt"), text.getBytes("UTF-8"));
+        for (int i = 0; i < parts.size(); i++) {
+            Unit u = parts.get(i);
+            StringBuilder sb = new StringBuilder("puzzle " + hash + "\nprefix");
+            for (int id : u.prefix) sb.append(' ').append(id);
+            sb.append("\nestimate ").append(u.estimate).append('\n');
+            writeAtomically(d.resolve(unitName(i) + ".unit"), sb.toString());
+        }
+        writeAtomically(d.resolve("units.txt"), "units " + parts.size() + "\npuzzle " + hash + "\n");
+        return parts.size();
+    }
+
+    // what split() leaves behind: units.txt, solutions.txt and every unit-* file
+    private static ArrayList<Path> jobFiles(Path d) throws IOException {
+        ArrayList<Path> out = new ArrayList<>();
+        for (String name : new String[] {"units.txt", "solutions.txt"}) {
+            if (Files.exists(d.resolve(name))) out.add(d.resolve(name));
+        }
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(d, "unit-*")) {
+            for (Path f : ds) out.add(f);
+        }
+        return out;
+    }
+
+    // ---- work ----
+
+    /*
+     * Claim and process units until none are left. Each thread has its own matrix. With `solutions`
+     * every solution is also written out, otherwise units are only counted.
+     */
+    public static int work(String dir, int threads, boolean solutions) throws IOException, InterruptedException {
+        Path d = Paths.get(dir);
+        String text = new String(Files.readAllBytes(d.resolve("puzzle.txt")), "UTF-8");
+        Puzzle p = Helpers.parsePuzzle(text);
+        String hash = puzzleHash(text);
+        String worker = java.lang.management.ManagementFactory.getRuntimeMXBean().getName().replaceAll("[^A-Za-z0-9@.-]", "_");
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<Integer>> done = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final String me = worker + "-" + t;
+            done.add(pool.submit(() -> {
+                DLX.KillerDLXBuilder builder = new DLX.KillerDLXBuilder(p);
+                builder.setParallel(false);
+                DLX dlx = builder.build();
+                GridDecoder decoder = new GridDecoder(builder.getRowDecodes());
+                int n = 0;
+                Path claimed;
+                while ((claimed = claimNext(d, me)) != null) {
+                    runUnit(d, claimed, hash, dlx, decoder, solutions);
+                    n++;
+                }
+                return n;
+            }));
+        }
+        pool.shutdown();
+        int total = 0;
+        try {
+            for (Future<Integer> f : done) total += f.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Worker failed", e.getCause());
+        }
+        return total;
+    }
+
+    // atomically rename some waiting unit to .claimed-<me>; null when nothing is left
+    private static Path claimNext(Path d, String me) throws IOException {
+        ArrayList<Path> waiting = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(d, "unit-*.unit")) {
+            for (Path f : ds) waiting.add(f);
+        }
+        Collections.sort(waiting);
+        for (Path f : waiting) {
+            String name = f.getFileName().toString();
+            Path claimed = d.resolve(name.substring(0, name.length() - ".unit".length()) + ".claimed-" + me);
+            try {
+                Files.move(f, claimed, StandardCopyOption.ATOMIC_MOVE);
+                return claimed;
+            } catch (NoSuchFileException e) {
+                // another worker got there first
+            }
+        }
+        return null;
+    }
+
+    private static void runUnit(Path d, Path claimed, String hash, DLX dlx, GridDecoder decoder, boolean solutions) throws IOException {
+        String name = claimed.getFileName().toString();
+        String base = name.substring(0, name.indexOf(".claimed-"));
+        checkHash(claimed, hash); // its row ids would select rows of some other matrix
+        int[] prefix = readPrefix(claimed);
+
+        for (int id : prefix) dlx.select(id);
+        long count;
+        long t0 = System.nanoTime();
+        try {
+            if (solutions) {
+                Path out = d.resolve(base + ".solutions.tmp");
+                try (BufferedWriter w = Files.newBufferedWriter(out)) {
+                    int[] grid = new int[81];
+                    char[] line = new char[81];
+                    count = dlx.enumerate((rowIds, n) -> {
+                        decoder.decode(rowIds, n, grid);
+                        for (int i = 0; i < 81; i++) line[i] = (char) ('0' + grid[i]);
+                        try { w.write(line); w.newLine(); }
+                        catch (IOException e) { throw new UncheckedIOException(e); }
+                    });
+                }
+                Files.move(out, d.resolve(base + ".solutions"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                count = dlx.countSolutions();
+            }
+        } finally {
+            dlx.unselectAll();
+        }
+        writeAtomically(d.resolve(base + ".result"),
+            "puzzle " + hash + "\ncount " + count + "\nnodes " + dlx.getNodes() + "\nseconds " + (System.nanoTime() - t0) / 1e9 + "\n");
+        Files.deleteIfExists(claimed);
+    }
+
+    /* Put units claimed by workers that died back in the queue (only call it when no worker is running). */
+    public static int requeue(String dir) throws IOException {
+        Path d = Paths.get(dir);
+        int n = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(d, "unit-*.claimed-*")) {
+            for (Path f : ds) {
+                String name = f.getFileName().toString();
+                String base = name.substring(0, name.indexOf(".claimed-"));
+                if (Files.exists(d.resolve(base + ".result"))) { Files.delete(f); continue; }
+                Files.move(f, d.resolve(base + ".unit"), StandardCopyOption.ATOMIC_MOVE);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    // ---- merge ----
+
+    /** Totals over all units of a job. */
+    public static class Totals {
+        public long solutions, nodes;
+        public int finished, expected;
+        public final ArrayList<String> missing = new ArrayList<>();
+        public boolean complete() { return missing.isEmpty(); }
+    }
+
+    /*
+     * Add up every unit's result. With solution files present they are concatenated into solutions.txt.
+     * Throws if units.txt or a result was written for a different puzzle than the one in puzzle.txt.
+     */
+    public static Totals merge(String dir) throws IOException {
+        Path d = Paths.get(dir);
+        Totals t = new Totals();
+        String hash = puzzleHash(new String(Files.readAllBytes(d.resolve("puzzle.txt")), "UTF-8"));
+        Path unitsFile = d.resolve("units.txt");
+        checkHash(unitsFile, hash);
+        String expected = readField(unitsFile, "units");
+        if (expected == null) throw new IOException("No unit count in " + unitsFile);
+        t.expected = Integer.parseInt(expected);
+        boolean anySolutions = false;
+        for (int i = 0; i < t.expected; i++) {
+            Path res = d.resolve(unitName(i) + ".result");
+            if (!Files.exists(res)) { t.missing.add(unitName(i)); continue; }
+            checkHash(res, hash);
+            for (String line : Files.readAllLines(res)) {
+                String[] kv = line.trim().split("\\s+");
+                if (kv[0].equals("count")) t.solutions += Long.parseLong(kv[1]);
+                else if (kv[0].equals("nodes")) t.nodes += Long.parseLong(kv[1]);
+            }
+            t.finished++;
+            anySolutions |= Files.exists(d.resolve(unitName(i) + ".solutions"));
+        }
+        if (anySolutions && t.complete()) {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(d.resolve("solutions.txt")))) {
+                for (int i = 0; i < t.expected; i++) {
+                    Path f = d.resolve(unitName(i) + ".solutions");
+                    if (Files.exists(f)) Files.copy(f, out);
+                }
+            }
+        }
+        return t;
+    }
+
+    // ---- files ----
+
+    private static String unitName(int i) { return String.format("unit-%05d", i); }
+
+    // short hash of the puzzle text that ties unit and result files to it
+    static String puzzleHash(String text) {
+        try {
+            byte[] h = java.security.MessageDigest.getInstance("SHA-256").digest(text.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 8; i++) sb.append(String.format("%02x", h[i]));
+            return sb.toString();
+        } catch (java.security.NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // both are required on every Java platform
+        }
+    }
+
+    private static void checkHash(Path f, String hash) throws IOException {
+        String h = readField(f, "puzzle");
+        if (!hash.equals(h))
+            throw new IOException(f + " belongs to a different puzzle (" + h + ", expected " + hash + "); split the job again");
+    }
+
+    // value after `key` on the first line starting with it, or null
+    private static String readField(Path f, String key) throws IOException {
+        for (String line : Files.readAllLines(f)) {
+            String[] kv = line.trim().split("\\s+", 2);
+            if (kv[0].equals(key) && kv.length == 2) return kv[1];
+        }
+        return null;
+    }
+
+    private static int[] readPrefix(Path unitFile) throws IOException {
+        for (String line : Files.readAllLines(unitFile)) {
+            String[] parts = line.trim().split("\\s+");
+            if (!parts[0].equals("prefix")) continue;
+            int[] prefix = new int[parts.length - 1];
+            for (int i = 1; i < parts.length; i++) prefix[i - 1] = Integer.parseInt(parts[i]);
+            return prefix;
+        }
+        throw new IOException("No prefix in " + unitFile);
+    }
+
+    private static void writeAtomically(Path target, String text) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(tmp, text.getBytes("UTF-8"));
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,283 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.*;
+
+/*
+ * OffHeapDLX.java
+ *
+ * Dancing links with the whole matrix outside the Java heap, through the Foreign Function & Memory API
+ * (java.lang.foreign, final in Java 22). Same links and same search as DLX, so it returns the same solutions
+ * in the same order, but the tens of millions of nodes of a big matrix are neither scanned nor copied by the
+ * garbage collector, and the heap can stay small.
+ *
+ * Layout: one segment of nodes, each node six ints next to each other (L, R, U, D, C, ROW; 24 bytes, so the
+ * links of a node share a cache line), plus one segment of column sizes. Node numbering is DLX's: node 0 is
+ * the head, column j is node j + 1, data nodes follow.
+ *
+ * Both segments belong to one confined Arena: close() frees them at once, deterministically, instead of
+ * whenever a GC gets round to it. Use it in try-with-resources (Solver closes it after each solve); it can
+ * only be used from the thread that created it, and any use after close() throws IllegalStateException.
+ * Only the plain search is here (no select(), tie-break options or checkpoints; use DLX for those).
+ *
+ * This is the only class that needs Java 22, so it sits in offheap/ and is compiled on its own, after the rest:
+ *   javac -cp . -d . offheap/OffHeapDLX.java
+ * Solver finds it by name for the OFF_HEAP engine; without it everything else still builds and runs.
+ */
+public class OffHeapDLX implements ExactCover, AutoCloseable {
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT;
+    private static final int FIELDS = 6;                   // ints per node
+    private static final int L = 0, R = 1, U = 2, D = 3, C = 4, ROW = 5;
+    private static final int HEAD = 0;
+
+    private Arena arena;
+    private MemorySegment nodes; // node n, field f at int index n * FIELDS + f
+    private MemorySegment size;  // int index = column header node
+    private long capacity;       // nodes the segment has room for
+    private int numNodes;
+    private final int numCols;
+
+    private int rowCount = 0;
+    private long nodeCount = 0;
+
+    private int[] partial = new int[16]; // current partial solution (stack of row nodes); small, so on the heap
+    private int depth = 0;
+    private final ArrayList<int[]> solutions = new ArrayList<>();
+    private SolutionListener listener = null;
+    private int[] rowBuf = new int[16];
+    private long found = 0, nodesVisited = 0;
+    private boolean stopAfterFirst = true, aborted = false;
+    private long maxSolutions = Long.MAX_VALUE;
+    private long nodeLimit = Long.MAX_VALUE;
+
+    /* Factory for KillerDLXBuilder.buildInto(OffHeapDLX.FACTORY); the builder passes the exact node count. */
+    public static final Factory<OffHeapDLX> FACTORY = OffHeapDLX::new;
+
+    public OffHeapDLX(int numCols, int nodeCapacity) {
+        this.numCols = numCols;
+        arena = Arena.ofConfined();
+        capacity = 1 + numCols + Math.max(0, nodeCapacity);
+        nodes = arena.allocate(capacity * FIELDS * 4, 4); // zeroed
+        size = arena.allocate((1 + numCols) * 4L, 4);
+        set(HEAD, L, HEAD); set(HEAD, R, HEAD); set(HEAD, U, HEAD); set(HEAD, D, HEAD);
+        numNodes = 1;
+        for (int k = 0; k < numCols; k++) {
+            int c = numNodes++;
+            // insert c just before head (append), as an empty column
+            set(c, R, HEAD);
+            set(c, L, get(HEAD, L));
+            set(get(HEAD, L), R, c);
+            set(HEAD, L, c);
+            set(c, U, c); set(c, D, c); set(c, C, c);
+        }
+    }
+
+    private int get(int n, int f) { return nodes.getAtIndex(INT, (long) n * FIELDS + f); }
+    private void set(int n, int f, int v) { nodes.setAtIndex(INT, (long) n * FIELDS + f, v); }
+    private int size(int c) { return size.getAtIndex(INT, c); }
+    private void size(int c, int v) { size.setAtIndex(INT, c, v); }
+
+    // move everything to a bigger arena and free the old one (only if a caller adds more than it announced)
+    private void ensureCapacity(long needed) {
+        if (needed <= capacity) return;
+        long cap = Math.max(needed, capacity * 2);
+        Arena bigger = Arena.ofConfined();
+        MemorySegment n2 = bigger.allocate(cap * FIELDS * 4, 4);
+        MemorySegment s2 = bigger.allocate(size.byteSize(), 4);
+        MemorySegment.copy(nodes, 0, n2, 0, (long) numNodes * FIELDS * 4);
+        MemorySegment.copy(size, 0, s2, 0, size.byteSize());
+        arena.close();
+        arena = bigger;
+        nodes = n2;
+        size = s2;
+        capacity = cap;
+    }
+
+    /* Bytes held outside the heap (0 after close()). */
+    public long getOffHeapBytes() {
+        return (arena == null) ? 0 : nodes.byteSize() + size.byteSize();
+    }
+
+    @Override
+    public void addRow(int rowId, int[] columnIndices, int from, int to) {
+        if (columnIndices == null || to <= from) return;
+        checkOpen();
+        rowCount++;
+        nodeCount += to - from;
+        ensureCapacity((long) numNodes + (to - from));
+        Arrays.sort(columnIndices, from, to); // same row layout as DLX
+
+        int first = -1, prev = -1;
+        for (int x = from; x < to; x++) {
+            int c = columnIndices[x] + 1;
+            int n = numNodes++;
+            set(n, C, c);
+            set(n, ROW, rowId);
+            // bottom of column c
+            int up = get(c, U);
+            set(n, D, c);
+            set(n, U, up);
+            set(up, D, n);
+            set(c, U, n);
+            size(c, size(c) + 1);
+            // row ring
+            if (first < 0) {
+                first = n;
+                set(n, L, n);
+                set(n, R, n);
+            } else {
+                int next = get(prev, R);
+                set(n, L, prev);
+                set(n, R, next);
+                set(next, L, n);
+                set(prev, R, n);
+            }
+            prev = n;
+        }
+    }
+
+    // fewest 1s, leftmost on ties (DLX's TIE_FIRST)
+    private int chooseColumn() {
+        int best = Integer.MAX_VALUE, bestC = -1;
+        for (int c = get(HEAD, R); c != HEAD; c = get(c, R)) {
+            int s = size(c);
+            if (s < best) {
+                best = s;
+                bestC = c;
+                if (s == 0) break; // dead end either way
+            }
+        }
+        return bestC;
+    }
+
+    // cover/uncover are the hot loops: the segments are read into locals once so the JIT can keep them in registers
+    private void cover(int c) {
+        MemorySegment m = nodes, sz = size;
+        long cb = (long) c * FIELDS;
+        int cl = m.getAtIndex(INT, cb + L), cr = m.getAtIndex(INT, cb + R);
+        m.setAtIndex(INT, (long) cl * FIELDS + R, cr);
+        m.setAtIndex(INT, (long) cr * FIELDS + L, cl);
+        for (int i = m.getAtIndex(INT, cb + D); i != c; i = m.getAtIndex(INT, (long) i * FIELDS + D)) {
+            for (int j = m.getAtIndex(INT, (long) i * FIELDS + R); j != i; j = m.getAtIndex(INT, (long) j * FIELDS + R)) {
+                long jb = (long) j * FIELDS;
+                int ju = m.getAtIndex(INT, jb + U), jd = m.getAtIndex(INT, jb + D), jc = m.getAtIndex(INT, jb + C);
+                m.setAtIndex(INT, (long) jd * FIELDS + U, ju);
+                m.setAtIndex(INT, (long) ju * FIELDS + D, jd);
+                sz.setAtIndex(INT, jc, sz.getAtIndex(INT, jc) - 1);
+            }
+        }
+    }
+
+    private void uncover(int c) {
+        MemorySegment m = nodes, sz = size;
+        long cb = (long) c * FIELDS;
+        for (int i = m.getAtIndex(INT, cb + U); i != c; i = m.getAtIndex(INT, (long) i * FIELDS + U)) {
+            for (int j = m.getAtIndex(INT, (long) i * FIELDS + L); j != i; j = m.getAtIndex(INT, (long) j * FIELDS + L)) {
+                long jb = (long) j * FIELDS;
+                int ju = m.getAtIndex(INT, jb + U), jd = m.getAtIndex(INT, jb + D), jc = m.getAtIndex(INT, jb + C);
+                sz.setAtIndex(INT, jc, sz.getAtIndex(INT, jc) + 1);
+                m.setAtIndex(INT, (long) jd * FIELDS + U, j);
+                m.setAtIndex(INT, (long) ju * FIELDS + D, j);
+            }
+        }
+        int cl = m.getAtIndex(INT, cb + L), cr = m.getAtIndex(INT, cb + R);
+        m.setAtIndex(INT, (long) cr * FIELDS + L, c);
+        m.setAtIndex(INT, (long) cl * FIELDS + R, c);
+    }
+
+    private boolean done() {
+        return aborted || found >= maxSolutions || (stopAfterFirst && found > 0);
+    }
+
+    private void search() {
+        if (done()) return;
+        if (++nodesVisited > nodeLimit) { aborted = true; return; }
+
+        if (get(HEAD, R) == HEAD) {
+            found++;
+            if (listener != null) {
+                if (rowBuf.length < depth) rowBuf = new int[partial.length];
+                for (int i = 0; i < depth; i++) rowBuf[i] = get(partial[i], ROW);
+                listener.onSolution(rowBuf, depth);
+            } else {
+                int[] rows = new int[depth];
+                for (int i = 0; i < depth; i++) rows[i] = get(partial[i], ROW);
+                solutions.add(rows);
+            }
+            return;
+        }
+
+        int c = chooseColumn();
+        if (c < 0 || size(c) == 0) return;
+
+        cover(c);
+        for (int r = get(c, D); r != c; r = get(r, D)) {
+            if (depth == partial.length) partial = Arrays.copyOf(partial, depth * 2);
+            partial[depth++] = r;
+            for (int j = get(r, R); j != r; j = get(j, R)) cover(get(j, C));
+            search();
+            for (int j = get(r, L); j != r; j = get(j, L)) uncover(get(j, C));
+            depth--;
+            if (done()) break;
+        }
+        uncover(c);
+    }
+
+    private long run(SolutionListener l) {
+        checkOpen();
+        solutions.clear();
+        found = 0;
+        nodesVisited = 0;
+        aborted = false;
+        depth = 0;
+        listener = l;
+        try {
+            search();
+        } finally {
+            listener = null;
+        }
+        return found;
+    }
+
+    private void checkOpen() {
+        if (arena == null) throw new IllegalStateException("OffHeapDLX is closed.");
+    }
+
+    @Override public void setMaxSolutions(long k) { maxSolutions = (k <= 0) ? 1 : k; }
+    @Override public void setNodeLimit(long limit) { nodeLimit = (limit <= 0) ? Long.MAX_VALUE : limit; }
+    @Override public boolean wasAborted() { return aborted; }
+    @Override public long getNodes() { return nodesVisited; }
+    @Override public int getRowCount() { return rowCount; }
+    @Override public long getNodeCount() { return nodeCount; }
+    @Override public int getColumnCount() { return numCols; }
+
+    @Override
+    public int[] solveFirst() {
+        stopAfterFirst = true;
+        run(null);
+        return solutions.isEmpty() ? null : solutions.get(0);
+    }
+
+    @Override
+    public ArrayList<int[]> solveAll() {
+        stopAfterFirst = false;
+        run(null);
+        return solutions;
+    }
+
+    @Override
+    public long enumerate(SolutionListener l) {
+        stopAfterFirst = false;
+        return run(l);
+    }
+
+    /* Free the off-heap matrix now. Safe to call more than once. */
+    @Override
+    public void close() {
+        if (arena == null) return;
+        arena.close();
+        arena = null;
+        nodes = null;
+        size = null;
+    }
+}